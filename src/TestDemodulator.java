@@ -0,0 +1,142 @@
+/**
+ * @project USTCADDA
+ * @title TestDemodulator.java
+ * @package
+ * @description Check ADCDemodulator against a double precision reference and
+ *              time it
+ * @author agent
+ * @email agent@local
+ * @date 2026.10.17
+ * @version v1.0
+ */
+import java.util.concurrent.ForkJoinPool;
+
+import ustcadc.ADCConfig;
+import ustcadc.ADCDemodulator;
+import ustcadc.ADCRawData;
+import ustcadc.ADCSimulator;
+import ustcadc.USTCADC;
+
+/**
+ * @className TestDemodulator
+ * @description Receive 2000 triggers of 4000 samples of a noisy tone from
+ *              ADCSimulator and demodulate them at 8 tones, with exact
+ *              frequencies and with forDDS. Every result is compared with a
+ *              double precision sum, the fixed point kernels may be off by half
+ *              a step per sample, so by at most width * 128 / KERNEL_SCALE.
+ *              Then prints the best throughput on one thread and on the common
+ *              pool, in raw samples per second, and the cores one thread's
+ *              rate needs to keep up with the ADC's 1 GS/s. Give the tone count
+ *              as first argument to time other counts. Exits with 1 if any
+ *              result is out of bound.
+ * @date 2026.10.17
+ */
+public class TestDemodulator {
+	private static final int TRIG_COUNT = 2000;
+	private static final int SAMPLE_DEPTH = 4000;
+	private static final int ROUNDS = 10;
+	private static final double SAMPLE_RATE = 1e9;
+
+	public static void main(String args[]) throws Exception
+	{
+		int toneCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		ADCSimulator sim = new ADCSimulator();
+		sim.setTrigRate(0);
+		sim.setToneFreq(50e6);
+		sim.setNoise(4);
+		USTCADC ad = new USTCADC("00-00-00-00-00-01", "00-00-00-00-00-02", sim);
+		ad.openADC();
+		ad.apply(new ADCConfig(false, SAMPLE_DEPTH, TRIG_COUNT, 0, SAMPLE_DEPTH, 50e6, (byte) 0, (byte) 0));
+		ADCRawData raw = ad.recvRawData();
+		ad.closeADC();
+
+		double[] freqs = new double[toneCount];
+		int[] windowStarts = new int[toneCount];
+		int[] windowWidths = new int[toneCount];
+		for (int k = 0; k < toneCount; k++) {
+			freqs[k] = 50e6 + k * 10.3e6;
+			windowStarts[k] = (k * 37) % 200;
+			windowWidths[k] = SAMPLE_DEPTH - 200;
+		}
+		ADCDemodulator exact = new ADCDemodulator(freqs, windowStarts, windowWidths, SAMPLE_DEPTH, SAMPLE_RATE);
+		ADCDemodulator dds = ADCDemodulator.forDDS(freqs, windowStarts, windowWidths, SAMPLE_DEPTH);
+		boolean isPassed = check("exact frequencies", exact, raw, windowStarts, windowWidths);
+		isPassed &= check("forDDS", dds, raw, windowStarts, windowWidths);
+
+		exact.setPool(null);
+		long single = time(exact, raw);
+		exact.setPool(ForkJoinPool.commonPool());
+		long pooled = time(exact, raw);
+		double samples = (double) TRIG_COUNT * SAMPLE_DEPTH;
+		double singleRate = samples / single;
+		System.out.printf("%d tones, %d x %d samples%n", toneCount, TRIG_COUNT, SAMPLE_DEPTH);
+		System.out.printf("one thread  %8.1f MS/s%n", singleRate);
+		System.out.printf("common pool %8.1f MS/s on %d processors%n", samples / pooled,
+				Runtime.getRuntime().availableProcessors());
+		System.out.printf("cores for 1 GS/s at the rate of one thread: %.1f%n", SAMPLE_RATE / 1e6 / singleRate);
+		System.out.println(isPassed ? "PASS" : "FAIL");
+		if (!isPassed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @title check
+	 * @description Compare a demodulator with the double precision sum at the
+	 *              frequencies it reports
+	 */
+	private static boolean check(String name, ADCDemodulator demodulator, ADCRawData raw, int[] windowStarts,
+			int[] windowWidths) {
+		double[][][] result = demodulator.demod(raw);
+		byte[] dataI = raw.getChannel(0);
+		byte[] dataQ = raw.getChannel(1);
+		double maxError = 0;
+		double maxBound = 0;
+		boolean isPassed = true;
+		for (int k = 0; k < demodulator.getToneCount(); k++) {
+			int start = windowStarts[k];
+			int width = windowWidths[k];
+			double omega = 2 * Math.PI * demodulator.getFreq(k) / SAMPLE_RATE;
+			double[] cos = new double[width];
+			double[] sin = new double[width];
+			for (int n = 0; n < width; n++) {
+				cos[n] = Math.cos(omega * (start + n));
+				sin[n] = Math.sin(omega * (start + n));
+			}
+			double bound = width * 128.0 / ADCDemodulator.KERNEL_SCALE;
+			maxBound = Math.max(maxBound, bound);
+			for (int i = 0; i < TRIG_COUNT; i++) {
+				int offset = i * SAMPLE_DEPTH + start;
+				double sumI = 0;
+				double sumQ = 0;
+				for (int n = 0; n < width; n++) {
+					int x = (dataI[offset + n] & 0xff) - 128;
+					int y = (dataQ[offset + n] & 0xff) - 128;
+					sumI += x * cos[n] + y * sin[n];
+					sumQ += y * cos[n] - x * sin[n];
+				}
+				double error = Math.max(Math.abs(result[0][k][i] - sumI), Math.abs(result[1][k][i] - sumQ));
+				maxError = Math.max(maxError, error);
+				isPassed &= error <= bound;
+			}
+		}
+		System.out.printf("%-18s max error %.3f, bound %.3f%n", name, maxError, maxBound);
+		return isPassed;
+	}
+
+	/**
+	 * @title time
+	 * @description Get the best time of several rounds in microseconds
+	 */
+	private static long time(ADCDemodulator demodulator, ADCRawData raw) {
+		double[][] resultI = new double[demodulator.getToneCount()][TRIG_COUNT];
+		double[][] resultQ = new double[demodulator.getToneCount()][TRIG_COUNT];
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			demodulator.demodInto(raw, resultI, resultQ);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1000;
+	}
+}
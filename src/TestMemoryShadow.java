@@ -0,0 +1,117 @@
+/**
+ * @project USTCADDA
+ * @title TestMemoryShadow.java
+ * @package
+ * @description Check diff upload against the memory of DACEmulator
+ * @author agent
+ * @email agent@local
+ * @date 2026.10.17
+ * @version v1.0
+ */
+import java.util.Arrays;
+
+import ustcdac.DACEmulator;
+import ustcdac.NioDACBackend;
+import ustcdac.USTCDAC;
+
+/**
+ * @className TestMemoryShadow
+ * @description Upload waves of 32768 samples with diff upload and count the
+ *              memory functions DACEmulator received for each. Covers a wave
+ *              starting inside a block, whose partial edge blocks are never
+ *              known and always sent, dirty blocks merged across a short
+ *              clean gap and kept apart across a long one, scattered changes
+ *              sent as one whole write, and writes in unblock mode sent again
+ *              once block mode is back. After every upload the emulated memory
+ *              must hold the wave. Exits with 1 on any mismatch.
+ * @date 2026.10.17
+ */
+public class TestMemoryShadow {
+	private static final int SAMPLES = 32768;
+
+	private static DACEmulator emu;
+	private static USTCDAC da;
+	private static boolean isPassed = true;
+
+	public static void main(String args[]) throws Exception
+	{
+		emu = new DACEmulator(0).start();
+		da = new USTCDAC("127.0.0.1", (short) emu.getPort(), new NioDACBackend());
+		da.openDAC();
+		da.setIsBlock(true);
+		da.setUploadCache(false);
+		da.setDiffUpload(true);
+		da.setRegisterCache(false);
+
+		int[] wave = new int[SAMPLES];
+		for (int k = 0; k < wave.length; k++) {
+			wave[k] = k & 0xffff;
+		}
+		check("first upload", 1, 3, wave, 1);
+		check("same wave, partial edges", 1, 3, wave, 2);
+		wave[1] ^= 1;
+		check("change in edge block", 1, 3, wave, 2);
+
+		check("first upload", 2, 0, wave, 1);
+		check("same wave", 2, 0, wave, 0);
+		wave[1000] ^= 1;
+		wave[1030] ^= 1;
+		check("short gap merged", 2, 0, wave, 1);
+		wave[1000] ^= 1;
+		wave[1100] ^= 1;
+		check("long gap split", 2, 0, wave, 2);
+		for (int k = 0; k < wave.length; k += 512) {
+			wave[k] ^= 1;
+		}
+		check("scattered, whole write", 2, 0, wave, 1);
+
+		da.setIsBlock(false);
+		wave[2000] ^= 1;
+		check("unblock mode", 2, 0, wave, 1);
+		da.setIsBlock(true);
+		check("unconfirmed sent again", 2, 0, wave, 1);
+		check("confirmed", 2, 0, wave, 0);
+
+		da.closeDAC();
+		emu.stop();
+		System.out.println(isPassed ? "PASS" : "FAIL");
+		if (!isPassed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @title check
+	 * @description Upload a wave and compare the functions received and the
+	 *              memory of the emulator
+	 */
+	private static void check(String name, int channel, int memOffset, int[] wave, long functions) {
+		long before = emu.getFunctionCount();
+		da.writeWave(channel, memOffset, wave);
+		// A register read always waits for its return, so the write before
+		// it has been received even in unblock mode.
+		da.readReg(1, 0);
+		long received = emu.getFunctionCount() - before - 1;
+		int startAddr = (((channel << 1) - 2) << 18) + (memOffset << 1);
+		boolean isEqual = Arrays.equals(emu.readMemory(startAddr, wave.length * 2), formatWave(wave));
+		boolean isOk = received == functions && isEqual;
+		System.out.printf("%-28s %d functions, expected %d, %s%n", name, received, functions,
+				isEqual ? "same memory" : "memory differs");
+		isPassed &= isOk;
+	}
+
+	/**
+	 * @title formatWave
+	 * @description Lay out a wave as the DAC memory holds it, samples swapped
+	 *              in pairs
+	 */
+	private static byte[] formatWave(int[] wave) {
+		byte[] memory = new byte[wave.length * 2];
+		for (int k = 0; k < wave.length; k++) {
+			int addr = (k ^ 1) << 1;
+			memory[addr] = (byte) wave[k];
+			memory[addr + 1] = (byte) (wave[k] >> 8);
+		}
+		return memory;
+	}
+}
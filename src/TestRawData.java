@@ -0,0 +1,101 @@
+/**
+ * @project USTCADDA
+ * @title TestRawData.java
+ * @package
+ * @description Time raw data receive, per sample copy against bulk copy
+ * @author agent
+ * @email agent@local
+ * @date 2026.10.17
+ * @version v1.0
+ */
+import com.sun.jna.Memory;
+import com.sun.jna.ptr.IntByReference;
+
+import ustcadc.ADCConfig;
+import ustcadc.ADCRawData;
+import ustcadc.ADCSimulator;
+import ustcadc.USTCADC;
+
+/**
+ * @className TestRawData
+ * @description Receive 500 triggers of 20000 samples from ADCSimulator the way
+ *              recvData used to, one getByte per sample into short[][][], and
+ *              with recvRawData and recvData as they are now. The simulator has
+ *              no noise, so all three must give the same samples. Prints the
+ *              best of several rounds of each.
+ * @date 2026.10.17
+ */
+public class TestRawData {
+	private static final int TRIG_COUNT = 500;
+	private static final int SAMPLE_DEPTH = 20000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String args[]) throws Exception
+	{
+		ADCSimulator sim = new ADCSimulator();
+		sim.setTrigRate(0);
+		sim.setNoise(0);
+		USTCADC ad = new USTCADC("00-00-00-00-00-01", "00-00-00-00-00-02", sim);
+		ad.openADC();
+		ad.apply(new ADCConfig(false, SAMPLE_DEPTH, TRIG_COUNT, 0, SAMPLE_DEPTH, 50e6, (byte) 0, (byte) 0));
+		IntByReference pID = new IntByReference();
+		sim.OpenADC(pID, "00-00-00-00-00-03", "00-00-00-00-00-04");
+		int id = pID.getValue();
+
+		long perSample = Long.MAX_VALUE;
+		long bulk = Long.MAX_VALUE;
+		long adapter = Long.MAX_VALUE;
+		short[][][] old = null;
+		ADCRawData raw = null;
+		short[][][] data = null;
+		for (int r = 0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			old = recvPerSample(sim, id);
+			perSample = Math.min(perSample, System.nanoTime() - start);
+			start = System.nanoTime();
+			raw = ad.recvRawData();
+			bulk = Math.min(bulk, System.nanoTime() - start);
+			start = System.nanoTime();
+			data = ad.recvData();
+			adapter = Math.min(adapter, System.nanoTime() - start);
+		}
+		boolean isEqual = true;
+		for (int i = 0; i < TRIG_COUNT; i += 97) {
+			for (int j = 0; j < SAMPLE_DEPTH; j++) {
+				isEqual &= old[0][i][j] == raw.getI(i, j) && old[1][i][j] == raw.getQ(i, j);
+				isEqual &= old[0][i][j] == data[0][i][j] && old[1][i][j] == data[1][i][j];
+			}
+		}
+		System.out.printf("%d x %d samples per channel%n", TRIG_COUNT, SAMPLE_DEPTH);
+		System.out.printf("getByte per sample      %8.1f ms%n", perSample / 1e6);
+		System.out.printf("recvRawData bulk copy   %8.1f ms, %.0fx%n", bulk / 1e6, (double) perSample / bulk);
+		System.out.printf("recvData over raw data  %8.1f ms, %.0fx%n", adapter / 1e6, (double) perSample / adapter);
+		System.out.println(isEqual ? "Same samples" : "Samples differ");
+		ad.closeADC();
+		sim.CloseADC(id);
+		if (!isEqual) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @title recvPerSample
+	 * @description Receive as recvData did before the bulk copy
+	 */
+	private static short[][][] recvPerSample(ADCSimulator sim, int id) throws Exception {
+		Memory pDataI = new Memory(SAMPLE_DEPTH * TRIG_COUNT);
+		Memory pDataQ = new Memory(SAMPLE_DEPTH * TRIG_COUNT);
+		int code = sim.RecvData(id, TRIG_COUNT, SAMPLE_DEPTH, pDataI, pDataQ);
+		if (code != 0) {
+			throw new Exception("RecvData returned " + code);
+		}
+		short data[][][] = new short[2][TRIG_COUNT][SAMPLE_DEPTH];
+		for (int i = 0; i < TRIG_COUNT; i++) {
+			for (int j = 0; j < SAMPLE_DEPTH; j++) {
+				data[0][i][j] = (short) (pDataI.getByte(i * SAMPLE_DEPTH + j) & 0x00ff);
+				data[1][i][j] = (short) (pDataQ.getByte(i * SAMPLE_DEPTH + j) & 0x00ff);
+			}
+		}
+		return data;
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * @project USTCADDA
+ * @title TestRecvInto.java
+ * @package
+ * @description Check that recvDataInto and recvDemoInto allocate nothing
+ * @author agent
+ * @email agent@local
+ * @date 2026.10.17
+ * @version v1.0
+ */
+import java.lang.management.ManagementFactory;
+
+import ustcadc.ADCConfig;
+import ustcadc.ADCRawData;
+import ustcadc.ADCSimulator;
+import ustcadc.USTCADC;
+
+/**
+ * @className TestRecvInto
+ * @description Receive from ADCSimulator in a loop and count the bytes the
+ *              thread allocated once the staging memory has grown. The
+ *              simulator writes straight into the driver memory, so every byte
+ *              counted comes from USTCADC. Exits with 1 if any call allocated.
+ * @date 2026.10.17
+ */
+public class TestRecvInto {
+	private static final int WARMUP = 2000;
+	private static final int CALLS = 1000;
+
+	public static void main(String args[]) throws Exception
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("Thread allocated memory is not supported by this JVM");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		ADCSimulator sim = new ADCSimulator();
+		sim.setTrigRate(0);
+		USTCADC ad = new USTCADC("00-00-00-00-00-01", "00-00-00-00-00-02", sim);
+		ad.openADC();
+		boolean isPassed = true;
+
+		ad.apply(new ADCConfig(false, 512, 64, 0, 512, 50e6, (byte) 0, (byte) 0));
+		ADCRawData raw = new ADCRawData(64, 512);
+		byte[] dataI = new byte[64 * 512];
+		byte[] dataQ = new byte[64 * 512];
+		for (int k = 0; k < WARMUP; k++) {
+			ad.recvDataInto(raw);
+			ad.recvDataInto(dataI, dataQ);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int k = 0; k < CALLS; k++) {
+			ad.recvDataInto(raw);
+		}
+		long raws = threads.getThreadAllocatedBytes(thread) - before;
+		before = threads.getThreadAllocatedBytes(thread);
+		for (int k = 0; k < CALLS; k++) {
+			ad.recvDataInto(dataI, dataQ);
+		}
+		long arrays = threads.getThreadAllocatedBytes(thread) - before;
+		before = threads.getThreadAllocatedBytes(thread);
+		for (int k = 0; k < CALLS; k++) {
+			ad.recvRawData();
+		}
+		long allocating = threads.getThreadAllocatedBytes(thread) - before;
+		isPassed &= report("recvDataInto(ADCRawData)", raws);
+		isPassed &= report("recvDataInto(byte[], byte[])", arrays);
+		// The allocating call shows the counter works.
+		report("recvRawData()", allocating);
+
+		ad.apply(new ADCConfig(true, 512, 1000, 0, 512, 50e6, (byte) 0, (byte) 0));
+		int[] demoI = new int[1000];
+		int[] demoQ = new int[1000];
+		for (int k = 0; k < WARMUP; k++) {
+			ad.recvDemoInto(demoI, demoQ);
+		}
+		before = threads.getThreadAllocatedBytes(thread);
+		for (int k = 0; k < CALLS; k++) {
+			ad.recvDemoInto(demoI, demoQ);
+		}
+		long demos = threads.getThreadAllocatedBytes(thread) - before;
+		isPassed &= report("recvDemoInto(int[], int[])", demos);
+
+		ad.closeADC();
+		System.out.println(isPassed ? "PASS" : "FAIL");
+		if (!isPassed) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean report(String name, long bytes) {
+		System.out.printf("%-30s %d bytes in %d calls%n", name, bytes, CALLS);
+		return bytes == 0;
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * @project USTCADDA
+ * @title TestWaveEncoder.java
+ * @package
+ * @description Time wave and seq upload, old formatting against the encoder
+ * @author agent
+ * @email agent@local
+ * @date 2026.10.17
+ * @version v1.0
+ */
+import java.util.Arrays;
+
+import com.sun.jna.Memory;
+import com.sun.jna.ptr.IntByReference;
+
+import ustcdac.DACEmulator;
+import ustcdac.NioDACBackend;
+import ustcdac.USTCDAC;
+
+/**
+ * @className TestWaveEncoder
+ * @description Upload a 32768 samples wave and a 4096 entries seq to
+ *              DACEmulator in block mode, once formatted as writeWave and
+ *              writeSeq did before the encoder, to channel 1, and once with
+ *              writeWave and writeSeq as they are now, to channel 2. Both take
+ *              the same loopback round trip, so the difference is the
+ *              formatting. Prints the mean of warmed loops and exits with 1 if
+ *              the memory of the two channels differs.
+ * @date 2026.10.17
+ */
+public class TestWaveEncoder {
+	private static final int WRITEMEMINST = 0x00000004;
+	private static final int WARMUP = 2000;
+	private static final int LOOPS = 2000;
+
+	public static void main(String args[]) throws Exception
+	{
+		DACEmulator emu = new DACEmulator(0).start();
+		USTCDAC da = new USTCDAC("127.0.0.1", (short) emu.getPort(), new NioDACBackend());
+		da.openDAC();
+		da.setIsBlock(true);
+		da.setUploadCache(false);
+		da.setDiffUpload(false);
+		NioDACBackend backend = new NioDACBackend();
+		IntByReference pID = new IntByReference();
+		backend.OpenDAC(pID, "127.0.0.1", (short) emu.getPort());
+		int id = pID.getValue();
+
+		int[] wave = new int[32768];
+		for (int k = 0; k < wave.length; k++) {
+			wave[k] = k * 2;
+		}
+		long[] seq = new long[4096];
+		for (int k = 0; k < seq.length; k++) {
+			seq[k] = 0x0000000010000000L + k;
+		}
+		int waveAddr1 = 0;
+		int waveAddr2 = 2 << 18;
+		int seqAddr1 = 1 << 18;
+		int seqAddr2 = 3 << 18;
+
+		for (int k = 0; k < WARMUP; k++) {
+			writeMemory(backend, id, waveAddr1, formatWave(wave));
+			writeMemory(backend, id, seqAddr1, formatSeq(seq));
+			da.writeWave(2, 0, wave);
+			da.writeSeq(2, 0, seq);
+		}
+		long start = System.nanoTime();
+		for (int k = 0; k < LOOPS; k++) {
+			writeMemory(backend, id, waveAddr1, formatWave(wave));
+		}
+		long oldWave = (System.nanoTime() - start) / LOOPS;
+		start = System.nanoTime();
+		for (int k = 0; k < LOOPS; k++) {
+			da.writeWave(2, 0, wave);
+		}
+		long newWave = (System.nanoTime() - start) / LOOPS;
+		start = System.nanoTime();
+		for (int k = 0; k < LOOPS; k++) {
+			writeMemory(backend, id, seqAddr1, formatSeq(seq));
+		}
+		long oldSeq = (System.nanoTime() - start) / LOOPS;
+		start = System.nanoTime();
+		for (int k = 0; k < LOOPS; k++) {
+			da.writeSeq(2, 0, seq);
+		}
+		long newSeq = (System.nanoTime() - start) / LOOPS;
+
+		boolean isEqual = Arrays.equals(emu.readMemory(waveAddr1, wave.length * 2),
+				emu.readMemory(waveAddr2, wave.length * 2))
+				&& Arrays.equals(emu.readMemory(seqAddr1, seq.length * 8), emu.readMemory(seqAddr2, seq.length * 8));
+		System.out.printf("wave of %d samples, old %.1f us, encoder %.1f us%n", wave.length, oldWave / 1e3,
+				newWave / 1e3);
+		System.out.printf("seq of %d entries, old %.1f us, encoder %.1f us%n", seq.length, oldSeq / 1e3,
+				newSeq / 1e3);
+		System.out.println(isEqual ? "Same memory" : "Memory differs");
+		backend.CloseDAC(id);
+		da.closeDAC();
+		emu.stop();
+		if (!isEqual) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @title writeMemory
+	 * @description Write formatted data and wait for its return, as
+	 *              USTCDAC.writeMemory did in block mode
+	 */
+	private static void writeMemory(NioDACBackend backend, int id, int startAddr, short data[]) {
+		Memory pData = new Memory(2 * data.length);
+		for (int k = 0; k < data.length; k++) {
+			pData.setShort(k << 1, data[k]);
+		}
+		backend.WriteMemory(id, WRITEMEMINST, startAddr, 2 * data.length, pData);
+		backend.GetReturn(id, 1, new IntByReference(), new IntByReference(), null);
+	}
+
+	/**
+	 * @title formatWave
+	 * @description Format a wave as USTCDAC.formatWave did
+	 */
+	private static short[] formatWave(int[] wave) {
+		int waveLen = wave.length;
+		if (wave.length % 8 != 0) {
+			waveLen = ((wave.length >> 3) + 1) << 3;
+		}
+		short[] newWave = new short[waveLen];
+		for (int i = 1; i < wave.length; i += 2) {
+			newWave[i] = (short) (wave[i - 1] & 0x0000ffff);
+			newWave[i - 1] = (short) (wave[i] & 0x0000ffff);
+		}
+		for (int i = wave.length; i < waveLen; i++) {
+			newWave[i] = (short) (32768 & 0x00ff);
+		}
+		return newWave;
+	}
+
+	/**
+	 * @title formatSeq
+	 * @description Format a seq as USTCDAC.formatSeq did
+	 */
+	private static short[] formatSeq(long[] seq) {
+		short[] newSeq = new short[seq.length * 4];
+		for (int i = 0; i < seq.length; i++) {
+			newSeq[i * 4] = (short) ((seq[i] >> 32) & 0x000000000000ffff);
+			newSeq[i * 4 + 1] = (short) ((seq[i] >> 48) & 0x000000000000ffff);
+			newSeq[i * 4 + 2] = (short) ((seq[i] >> 0) & 0x000000000000ffff);
+			newSeq[i * 4 + 3] = (short) ((seq[i] >> 16) & 0x000000000000ffff);
+		}
+		return newSeq;
+	}
+}
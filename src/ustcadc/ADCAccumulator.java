@@ -0,0 +1,231 @@
+/**
+* @project USTCADDA
+* @title ADCAccumulator.java
+* @package ustcadc
+* @description Running mean and variance of raw ADC traces
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @className ADCAccumulator
+ * @description Fold raw acquisitions into per sample statistics of each
+ *              channel: exact long sums, and Welford mean and M2 merged batch by
+ *              batch with Chan's formula. Memory is O(sampleDepth) whatever the
+ *              count of triggers. Each acquisition is split over the fork-join
+ *              pool in blocks of samples, every block scanning all triggers.
+ * @date 2026.10.17
+ */
+public class ADCAccumulator {
+	static final int BLOCK = 1024;
+
+	private final int sampleDepth;
+	private final long[][] sums;
+	private final double[][] means;
+	private final double[][] m2s;
+	private final long[][] batchSums;
+	private final long[][] batchSquares;
+	private long count;
+	private ADCRawData stage;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Create an accumulator.
+	 *
+	 * @param sampleDepth
+	 *            Sample depth of accumulated data
+	 */
+	public ADCAccumulator(int sampleDepth) {
+		this.sampleDepth = sampleDepth;
+		this.sums = new long[2][sampleDepth];
+		this.means = new double[2][sampleDepth];
+		this.m2s = new double[2][sampleDepth];
+		this.batchSums = new long[2][sampleDepth];
+		this.batchSquares = new long[2][sampleDepth];
+	}
+
+	/**
+	 * @title setPool
+	 * @description Set the fork-join pool the sample blocks are split over
+	 * @param pool
+	 *            The pool, null for running on the calling thread
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @title accumulate
+	 * @description Fold all triggers of raw data into the statistics
+	 * @param data
+	 *            Raw data of sampleDepth samples per trigger
+	 */
+	public synchronized void accumulate(ADCRawData data) {
+		if (data.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Sample depth of data does not match the accumulator");
+		}
+		if (data.getTrigCount() == 0) {
+			return;
+		}
+		if (pool == null || sampleDepth <= BLOCK) {
+			accumulateRange(data, 0, sampleDepth, count);
+		} else {
+			pool.invoke(new AccumulateTask(data, 0, sampleDepth, count));
+		}
+		count += data.getTrigCount();
+	}
+
+	/**
+	 * @title reset
+	 * @description Clear all statistics
+	 */
+	public synchronized void reset() {
+		for (int c = 0; c < 2; c++) {
+			Arrays.fill(sums[c], 0);
+			Arrays.fill(means[c], 0);
+			Arrays.fill(m2s[c], 0);
+		}
+		count = 0;
+	}
+
+	/**
+	 * @title getCount
+	 * @description Get count of accumulated triggers
+	 * @return count
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @title getSampleDepth
+	 * @description Get sample depth of the accumulator
+	 * @return sampleDepth
+	 */
+	public int getSampleDepth() {
+		return sampleDepth;
+	}
+
+	/**
+	 * @title getSum
+	 * @description Get exact sum of each sample
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @return Copy of the sums
+	 */
+	public synchronized long[] getSum(int channel) {
+		return sums[channel].clone();
+	}
+
+	/**
+	 * @title getMean
+	 * @description Get mean trace
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @return Copy of the means
+	 */
+	public synchronized double[] getMean(int channel) {
+		return means[channel].clone();
+	}
+
+	/**
+	 * @title getVariance
+	 * @description Get sample variance of each sample, M2 / (count - 1)
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @return The variances, all 0 when count is less than 2
+	 */
+	public synchronized double[] getVariance(int channel) {
+		double[] variance = new double[sampleDepth];
+		if (count > 1) {
+			for (int j = 0; j < sampleDepth; j++) {
+				variance[j] = m2s[channel][j] / (count - 1);
+			}
+		}
+		return variance;
+	}
+
+	/**
+	 * @title stage
+	 * @description Get reusable raw data to receive into before accumulating
+	 * @param trigCount
+	 *            Trigger count
+	 * @return Raw data of trigCount triggers
+	 */
+	synchronized ADCRawData stage(int trigCount) {
+		if (stage == null || stage.getTrigCount() != trigCount) {
+			stage = new ADCRawData(trigCount, sampleDepth);
+		}
+		return stage;
+	}
+
+	void accumulateRange(ADCRawData data, int from, int to, long before) {
+		int trigCount = data.getTrigCount();
+		for (int c = 0; c < 2; c++) {
+			byte[] samples = data.getChannel(c);
+			long[] sum = batchSums[c];
+			long[] square = batchSquares[c];
+			for (int j = from; j < to; j++) {
+				sum[j] = 0;
+				square[j] = 0;
+			}
+			for (int i = 0; i < trigCount; i++) {
+				int offset = i * sampleDepth;
+				for (int j = from; j < to; j++) {
+					int v = samples[offset + j] & 0xff;
+					sum[j] += v;
+					square[j] += v * v;
+				}
+			}
+			long[] total = sums[c];
+			double[] mean = means[c];
+			double[] m2 = m2s[c];
+			double n = trigCount;
+			double after = before + n;
+			for (int j = from; j < to; j++) {
+				double batchMean = sum[j] / n;
+				double batchM2 = square[j] - sum[j] * batchMean;
+				double delta = batchMean - mean[j];
+				total[j] += sum[j];
+				mean[j] += delta * n / after;
+				m2[j] += batchM2 + delta * delta * before * n / after;
+			}
+		}
+	}
+
+	/**
+	 * @className AccumulateTask
+	 * @description Accumulate a range of samples, split in halves down to BLOCK.
+	 */
+	class AccumulateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final ADCRawData data;
+		final int from;
+		final int to;
+		final long before;
+
+		AccumulateTask(ADCRawData data, int from, int to, long before) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.before = before;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BLOCK) {
+				accumulateRange(data, from, to, before);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new AccumulateTask(data, from, middle, before), new AccumulateTask(data, middle, to, before));
+		}
+	}
+}
@@ -0,0 +1,372 @@
+/**
+* @project USTCADDA
+* @title ADCAcquisition.java
+* @package ustcadc
+* @description Acquisition of any count of triggers in hardware sized chunks
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * @className ADCAcquisition
+ * @description Acquire more triggers than the 16 bits trigCount of ADC allows.
+ *              The job is split into chunks of at most MAX_TRIG_COUNT triggers,
+ *              received by a reader thread into two buffers in turn: while the
+ *              caller processes chunk k, the reader has already enabled ADC and
+ *              is receiving chunk k + 1, so ADC waits only when processing is
+ *              slower than acquisition. The last chunk may be shorter, its
+ *              trigCount is set just before it and the ADC trigCount is set
+ *              back after the job. While a job runs the ADC belongs to the
+ *              reader thread.
+ * @date 2026.10.17
+ */
+public class ADCAcquisition {
+	/**
+	 * @fields MAX_TRIG_COUNT : Largest trigCount of one acquisition
+	 */
+	public static final int MAX_TRIG_COUNT = 65535;
+	/**
+	 * @fields RAW_BUFFER_SIZE : Default bytes per channel of a raw chunk
+	 */
+	public static final int RAW_BUFFER_SIZE = 32 << 20;
+
+	/**
+	 * @className Chunk
+	 * @description One chunk of the job, valid until handle returns.
+	 */
+	public static class Chunk {
+		final byte[] dataI;
+		final byte[] dataQ;
+		final int[] demodI;
+		final int[] demodQ;
+		int index;
+		long firstTrigger;
+		int trigCount;
+		long timestamp;
+		ADCRawData rawData;
+
+		Chunk(boolean isDemod, int trigCount, int sampleDepth) {
+			dataI = isDemod ? null : new byte[trigCount * sampleDepth];
+			dataQ = isDemod ? null : new byte[trigCount * sampleDepth];
+			demodI = isDemod ? new int[trigCount] : null;
+			demodQ = isDemod ? new int[trigCount] : null;
+		}
+
+		/**
+		 * @title getIndex
+		 * @description Get index of the chunk, counted from 0
+		 * @return index
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @title getFirstTrigger
+		 * @description Get index of the first trigger of the chunk in the job
+		 * @return firstTrigger
+		 */
+		public long getFirstTrigger() {
+			return firstTrigger;
+		}
+
+		/**
+		 * @title getTrigCount
+		 * @description Get count of triggers in the chunk
+		 * @return trigCount
+		 */
+		public int getTrigCount() {
+			return trigCount;
+		}
+
+		/**
+		 * @title getTimestamp
+		 * @description Get System.nanoTime when the chunk was received
+		 * @return timestamp
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @title getRawData
+		 * @description Get raw data of trigCount triggers, null in demod mode
+		 * @return rawData
+		 */
+		public ADCRawData getRawData() {
+			return rawData;
+		}
+
+		/**
+		 * @title getDemodI
+		 * @description Get demod data of channel I, the first trigCount values
+		 *              are valid, null in raw data mode
+		 * @return demodI
+		 */
+		public int[] getDemodI() {
+			return demodI;
+		}
+
+		/**
+		 * @title getDemodQ
+		 * @description Get demod data of channel Q, the first trigCount values
+		 *              are valid, null in raw data mode
+		 * @return demodQ
+		 */
+		public int[] getDemodQ() {
+			return demodQ;
+		}
+	}
+
+	/**
+	 * @className ChunkHandler
+	 * @description Processing of each chunk, called in order on the thread of
+	 *              acquire.
+	 */
+	public interface ChunkHandler {
+		/**
+		 * @title handle
+		 * @description Process a chunk, its buffers are reused after return
+		 * @param chunk
+		 *            The chunk
+		 * @throws Exception
+		 *             Throw exception to stop the job
+		 */
+		void handle(Chunk chunk) throws Exception;
+	}
+
+	private static final Chunk END = new Chunk(true, 0, 0);
+
+	private final USTCADC adc;
+	private int chunkSize;
+	private long elapsed;
+	private long busyTime;
+	private long stallTime;
+	private int chunkCount;
+
+	/**
+	 * Create an acquisition on an opened and configured ADC.
+	 *
+	 * @param adc
+	 *            The ADC
+	 */
+	public ADCAcquisition(USTCADC adc) {
+		this.adc = adc;
+	}
+
+	/**
+	 * @title setChunkSize
+	 * @description Set triggers per chunk, by default MAX_TRIG_COUNT in demod
+	 *              mode and as many as fit RAW_BUFFER_SIZE in raw data mode
+	 * @param chunkSize
+	 *            Triggers per chunk, 1~MAX_TRIG_COUNT, 0 for the default
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 0 || chunkSize > MAX_TRIG_COUNT) {
+			throw new IllegalArgumentException("Chunk size " + chunkSize + " is not in 0~" + MAX_TRIG_COUNT);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @title acquire
+	 * @description Acquire raw data and fold every chunk into an accumulator
+	 * @param totalTriggers
+	 *            Count of triggers
+	 * @param accumulator
+	 *            Accumulator of the current sampleDepth
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void acquire(long totalTriggers, final ADCAccumulator accumulator) throws Exception {
+		if (adc.getDemodMode()) {
+			throw new IllegalStateException("Accumulator needs raw data mode");
+		}
+		if (accumulator.getSampleDepth() != adc.getSampleDepth()) {
+			throw new IllegalArgumentException("Sample depth of accumulator does not match the ADC");
+		}
+		acquire(totalTriggers, new ChunkHandler() {
+			@Override
+			public void handle(Chunk chunk) {
+				accumulator.accumulate(chunk.getRawData());
+			}
+		});
+	}
+
+	/**
+	 * @title acquireDemo
+	 * @description Acquire demod data into caller's arrays as one stream
+	 * @param dataI
+	 *            Channel I array, one value per trigger
+	 * @param dataQ
+	 *            Channel Q array, one value per trigger
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void acquireDemo(final int[] dataI, final int[] dataQ) throws Exception {
+		if (!adc.getDemodMode()) {
+			throw new IllegalStateException("ADC is not in demod mode");
+		}
+		if (dataQ.length < dataI.length) {
+			throw new IllegalArgumentException("Channel Q array is shorter than channel I");
+		}
+		acquire(dataI.length, new ChunkHandler() {
+			@Override
+			public void handle(Chunk chunk) {
+				int offset = (int) chunk.getFirstTrigger();
+				System.arraycopy(chunk.getDemodI(), 0, dataI, offset, chunk.getTrigCount());
+				System.arraycopy(chunk.getDemodQ(), 0, dataQ, offset, chunk.getTrigCount());
+			}
+		});
+	}
+
+	/**
+	 * @title acquire
+	 * @description Acquire triggers chunk by chunk, handling each chunk while
+	 *              the next is received
+	 * @param totalTriggers
+	 *            Count of triggers
+	 * @param handler
+	 *            Processing of each chunk
+	 * @throws Exception
+	 *             Throw exception of receiving or of the handler
+	 */
+	public void acquire(final long totalTriggers, ChunkHandler handler) throws Exception {
+		if (totalTriggers <= 0) {
+			throw new IllegalArgumentException("Trigger count must be positive");
+		}
+		final boolean isDemod = adc.getDemodMode();
+		final int sampleDepth = adc.getSampleDepth();
+		final int original = adc.getTrigCount();
+		final int size = (int) Math.min(getChunkSize(isDemod, sampleDepth), totalTriggers);
+		final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(2);
+		final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(3);
+		free.add(new Chunk(isDemod, size, sampleDepth));
+		free.add(new Chunk(isDemod, size, sampleDepth));
+		final Exception[] error = new Exception[1];
+		final long[] times = new long[2];
+		final int[] current = { original };
+		long start = System.nanoTime();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long first = 0;
+				int index = 0;
+				try {
+					while (first < totalTriggers) {
+						long waitStart = System.nanoTime();
+						Chunk chunk = free.take();
+						long recvStart = System.nanoTime();
+						times[1] += recvStart - waitStart;
+						int count = (int) Math.min(size, totalTriggers - first);
+						if (count != current[0]) {
+							adc.setTrigCount(count);
+							current[0] = count;
+						}
+						adc.enableADC();
+						if (isDemod) {
+							adc.recvDemoInto(chunk.demodI, chunk.demodQ);
+						} else {
+							adc.recvDataInto(chunk.dataI, chunk.dataQ);
+							chunk.rawData = new ADCRawData(count, sampleDepth, chunk.dataI, chunk.dataQ);
+						}
+						chunk.timestamp = System.nanoTime();
+						times[0] += chunk.timestamp - recvStart;
+						chunk.index = index++;
+						chunk.firstTrigger = first;
+						chunk.trigCount = count;
+						full.put(chunk);
+						first += count;
+					}
+				} catch (InterruptedException e) {
+					// Stopped by acquire.
+				} catch (Exception e) {
+					error[0] = e;
+				} finally {
+					full.offer(END);
+				}
+			}
+		}, "ADCAcquisition-" + adc.getMacAddr(true));
+		reader.setDaemon(true);
+		reader.start();
+		int chunks = 0;
+		try {
+			while (true) {
+				Chunk chunk = full.take();
+				if (chunk == END) {
+					break;
+				}
+				handler.handle(chunk);
+				chunks++;
+				free.put(chunk);
+			}
+		} finally {
+			reader.interrupt();
+			reader.join();
+			if (current[0] != original) {
+				adc.setTrigCount(original);
+			}
+			elapsed = System.nanoTime() - start;
+			busyTime = times[0];
+			stallTime = times[1];
+			chunkCount = chunks;
+		}
+		if (error[0] != null) {
+			throw error[0];
+		}
+	}
+
+	/**
+	 * @title getChunkCount
+	 * @description Get count of chunks handled by the last job
+	 * @return chunkCount
+	 */
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * @title getElapsed
+	 * @description Get wall clock time of the last job
+	 * @return Time in nanoseconds
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * @title getStallTime
+	 * @description Get time the reader waited for the handler in the last job,
+	 *              ADC is not enabled meanwhile
+	 * @return Time in nanoseconds
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	/**
+	 * @title getDutyCycle
+	 * @description Get ratio of the last job's time spent enabling and
+	 *              receiving
+	 * @return Duty cycle, 0~1
+	 */
+	public double getDutyCycle() {
+		return elapsed == 0 ? 0 : (double) busyTime / elapsed;
+	}
+
+	private int getChunkSize(boolean isDemod, int sampleDepth) {
+		if (chunkSize > 0) {
+			return chunkSize;
+		}
+		if (isDemod) {
+			return MAX_TRIG_COUNT;
+		}
+		return Math.max(1, Math.min(MAX_TRIG_COUNT, RAW_BUFFER_SIZE / Math.max(1, sampleDepth)));
+	}
+}
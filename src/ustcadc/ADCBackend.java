@@ -0,0 +1,123 @@
+/**
+* @project USTCADDA
+* @title ADCBackend.java
+* @package ustcadc
+* @description The driver interface behind USTCADC
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * @className ADCBackend
+ * @description The functions USTCADC needs from an ADC driver. The signatures
+ *              follow USTCADCDriver, so CADCLib is a backend as it is, and a
+ *              pure Java backend only has to fill the same pointers.
+ * @date 2026.10.17
+ */
+public interface ADCBackend {
+	/**
+	 * @title OpenADC
+	 * @description Start monitoring specified netcard
+	 * @param pID
+	 *            Receive the ID of the opened ADC
+	 * @param srcMac
+	 *            Source mac address of PC
+	 * @param dstMac
+	 *            Destination mac address of ADC
+	 * @return Error code, 0 for success
+	 */
+	int OpenADC(IntByReference pID, String srcMac, String dstMac);
+
+	/**
+	 * @title CloseADC
+	 * @description Stop monitoring specified netcard
+	 * @param id
+	 *            ID of ADC
+	 * @return Error code, 0 for success
+	 */
+	int CloseADC(int id);
+
+	/**
+	 * @title SendData
+	 * @description Send one instruction frame to ADC
+	 * @param id
+	 *            ID of ADC
+	 * @param len
+	 *            Length of frame in bytes
+	 * @param pData
+	 *            The frame data
+	 * @return Error code, 0 for success
+	 */
+	int SendData(int id, int len, Pointer pData);
+
+	/**
+	 * @title RecvData
+	 * @description Receive raw data, one unsigned byte per sample
+	 * @param id
+	 *            ID of ADC
+	 * @param row
+	 *            Trigger count
+	 * @param column
+	 *            Sample depth
+	 * @param pDataI
+	 *            Channel I buffer, row * column bytes
+	 * @param pDataQ
+	 *            Channel Q buffer, row * column bytes
+	 * @return Error code, 0 for success
+	 */
+	int RecvData(int id, int row, int column, Pointer pDataI, Pointer pDataQ);
+
+	/**
+	 * @title RecvDemo
+	 * @description Receive demod data, I and Q int interleaved per trigger
+	 * @param id
+	 *            ID of ADC
+	 * @param row
+	 *            Trigger count
+	 * @param pData
+	 *            The buffer, 8 * row bytes
+	 * @return Error code, 0 for success
+	 */
+	int RecvDemo(int id, int row, Pointer pData);
+
+	/**
+	 * @title GetMacAddress
+	 * @description Get mac address of PC or ADC
+	 * @param id
+	 *            ID of ADC
+	 * @param isDst
+	 *            1 for ADC, 0 for PC
+	 * @param pMac
+	 *            The buffer, 6 bytes
+	 * @return Error code, 0 for success
+	 */
+	int GetMacAddress(int id, int isDst, Pointer pMac);
+
+	/**
+	 * @title GetErrorMsg
+	 * @description Get error message of error code
+	 * @param id
+	 *            ID of ADC
+	 * @param errorCode
+	 *            The error code
+	 * @param strMsg
+	 *            The buffer, 1024 bytes
+	 * @return Error code, 0 for success
+	 */
+	int GetErrorMsg(int id, int errorCode, Pointer strMsg);
+
+	/**
+	 * @title GetSoftInformation
+	 * @description Get version information of the driver
+	 * @param info
+	 *            The buffer, 1024 bytes
+	 * @return Error code, 0 for success
+	 */
+	int GetSoftInformation(Pointer info);
+}
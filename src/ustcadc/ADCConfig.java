@@ -0,0 +1,251 @@
+/**
+* @project USTCADDA
+* @title ADCConfig.java
+* @package ustcadc
+* @description Immutable configuration of one ADC
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+/**
+ * @className ADCConfig
+ * @description Every setting USTCADC sends to the board, applied at once by
+ *              USTCADC.apply. A config is never changed, the with methods
+ *              return a copy with one setting changed, so a sweep can derive
+ *              each point from a base config.
+ * @date 2026.10.17
+ */
+public final class ADCConfig {
+	private final boolean isDemod;
+	private final int sampleDepth;
+	private final int trigCount;
+	private final int windowStart;
+	private final int windowWidth;
+	private final double demodFreq;
+	private final byte gainI;
+	private final byte gainQ;
+
+	/**
+	 * Create a config.
+	 *
+	 * @param isDemod
+	 *            True for demod mode, false for raw data mode
+	 * @param sampleDepth
+	 *            Sample depth, maximun 20000
+	 * @param trigCount
+	 *            Trigger count, maximun 65535
+	 * @param windowStart
+	 *            Demod window start
+	 * @param windowWidth
+	 *            Demod window width
+	 * @param demodFreq
+	 *            Demod frequency
+	 * @param gainI
+	 *            Channel I gain
+	 * @param gainQ
+	 *            Channel Q gain
+	 */
+	public ADCConfig(boolean isDemod, int sampleDepth, int trigCount, int windowStart, int windowWidth,
+			double demodFreq, byte gainI, byte gainQ) {
+		this.isDemod = isDemod;
+		this.sampleDepth = check("sampleDepth", sampleDepth);
+		this.trigCount = check("trigCount", trigCount);
+		this.windowStart = check("windowStart", windowStart);
+		this.windowWidth = check("windowWidth", windowWidth);
+		this.demodFreq = demodFreq;
+		this.gainI = gainI;
+		this.gainQ = gainQ;
+	}
+
+	/**
+	 * @title withDemodMode
+	 * @description Get a copy with another run mode
+	 * @param isDemod
+	 *            True for demod mode, false for raw data mode
+	 * @return The copy
+	 */
+	public ADCConfig withDemodMode(boolean isDemod) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withSampleDepth
+	 * @description Get a copy with another sample depth
+	 * @param sampleDepth
+	 *            Sample depth, maximun 20000
+	 * @return The copy
+	 */
+	public ADCConfig withSampleDepth(int sampleDepth) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withTrigCount
+	 * @description Get a copy with another trigger count
+	 * @param trigCount
+	 *            Trigger count, maximun 65535
+	 * @return The copy
+	 */
+	public ADCConfig withTrigCount(int trigCount) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withWindowStart
+	 * @description Get a copy with another demod window start
+	 * @param windowStart
+	 *            Demod window start
+	 * @return The copy
+	 */
+	public ADCConfig withWindowStart(int windowStart) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withWindowWidth
+	 * @description Get a copy with another demod window width
+	 * @param windowWidth
+	 *            Demod window width
+	 * @return The copy
+	 */
+	public ADCConfig withWindowWidth(int windowWidth) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withDemodFreq
+	 * @description Get a copy with another demod frequency
+	 * @param demodFreq
+	 *            Demod frequency
+	 * @return The copy
+	 */
+	public ADCConfig withDemodFreq(double demodFreq) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title withGain
+	 * @description Get a copy with other channel gains
+	 * @param gainI
+	 *            Channel I gain
+	 * @param gainQ
+	 *            Channel Q gain
+	 * @return The copy
+	 */
+	public ADCConfig withGain(byte gainI, byte gainQ) {
+		return new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title getDemodMode
+	 * @description Get run mode
+	 * @return isDemod, true for demod mode
+	 */
+	public boolean getDemodMode() {
+		return isDemod;
+	}
+
+	/**
+	 * @title getSampleDepth
+	 * @description Get sample depth
+	 * @return sampleDepth
+	 */
+	public int getSampleDepth() {
+		return sampleDepth;
+	}
+
+	/**
+	 * @title getTrigCount
+	 * @description Get trigger count
+	 * @return trigCount
+	 */
+	public int getTrigCount() {
+		return trigCount;
+	}
+
+	/**
+	 * @title getWindowStart
+	 * @description Get demod window start
+	 * @return windowStart
+	 */
+	public int getWindowStart() {
+		return windowStart;
+	}
+
+	/**
+	 * @title getWindowWidth
+	 * @description Get demod window width
+	 * @return windowWidth
+	 */
+	public int getWindowWidth() {
+		return windowWidth;
+	}
+
+	/**
+	 * @title getDemodFreq
+	 * @description Get demod frequency
+	 * @return demodFreq
+	 */
+	public double getDemodFreq() {
+		return demodFreq;
+	}
+
+	/**
+	 * @title getGainI
+	 * @description Get channel I gain
+	 * @return gainI
+	 */
+	public byte getGainI() {
+		return gainI;
+	}
+
+	/**
+	 * @title getGainQ
+	 * @description Get channel Q gain
+	 * @return gainQ
+	 */
+	public byte getGainQ() {
+		return gainQ;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ADCConfig)) {
+			return false;
+		}
+		ADCConfig other = (ADCConfig) obj;
+		return isDemod == other.isDemod && sampleDepth == other.sampleDepth && trigCount == other.trigCount
+				&& windowStart == other.windowStart && windowWidth == other.windowWidth
+				&& Double.compare(demodFreq, other.demodFreq) == 0 && gainI == other.gainI && gainQ == other.gainQ;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = isDemod ? 1 : 0;
+		hash = 31 * hash + sampleDepth;
+		hash = 31 * hash + trigCount;
+		hash = 31 * hash + windowStart;
+		hash = 31 * hash + windowWidth;
+		long bits = Double.doubleToLongBits(demodFreq);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		hash = 31 * hash + gainI;
+		return 31 * hash + gainQ;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ADCConfig[%s, depth %d, trig %d, window %d+%d, freq %g, gain %d/%d]",
+				isDemod ? "demod" : "raw", sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI,
+				gainQ);
+	}
+
+	private static int check(String name, int value) {
+		if (value < 0 || value > 0xffff) {
+			throw new IllegalArgumentException(name + " " + value + " does not fit 16 bits");
+		}
+		return value;
+	}
+}
@@ -0,0 +1,303 @@
+/**
+* @project USTCADDA
+* @title ADCDemodulator.java
+* @package ustcadc
+* @description Software demodulation of raw ADC data at many frequencies
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @className ADCDemodulator
+ * @description Demodulate raw data at N tones at once, each tone with its own
+ *              window. For tone k and trigger i, with x = I - 128 and y = Q -
+ *              128, the result is sum(x*cos + y*sin) for I and sum(y*cos - x*sin)
+ *              for Q over the window, phase counted from sample 0. The sin/cos
+ *              kernel of each tone is computed once as fixed point ints scaled
+ *              by 2^14, width cos values then width sin values, so the inner
+ *              loop is int multiply-add over 128-sample blocks. Triggers are
+ *              split over the fork-join pool. Created by forDDS, the
+ *              frequencies and phases follow the ADC's DDS and the kernels are
+ *              read in place from DemodKernelCache, so demodulators of the same
+ *              tones share one off heap copy.
+ * @date 2026.10.17
+ */
+public class ADCDemodulator {
+	/**
+	 * @fields KERNEL_SCALE : The scale of fixed point sin/cos tables.
+	 */
+	public static final int KERNEL_SCALE = 1 << 14;
+
+	static final int BLOCK = 128;
+	static final int SPLIT = 8;
+
+	private final int sampleDepth;
+	private final double sampleRate;
+	private final double[] freqs;
+	private final int[] windowStarts;
+	private final int[] windowWidths;
+	/**
+	 * @fields kernels : Kernel of each tone, a heap buffer or a view of the
+	 *         kernel cache
+	 */
+	private final IntBuffer[] kernels;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Create a demodulator.
+	 *
+	 * @param freqs
+	 *            Demod frequency of each tone in Hz
+	 * @param windowStarts
+	 *            Window start of each tone
+	 * @param windowWidths
+	 *            Window width of each tone
+	 * @param sampleDepth
+	 *            Sample depth of the raw data
+	 * @param sampleRate
+	 *            Sample rate of the ADC, 1e9 for USTCADC
+	 */
+	public ADCDemodulator(double[] freqs, int[] windowStarts, int[] windowWidths, int sampleDepth,
+			double sampleRate) {
+		this(freqs, windowStarts, windowWidths, sampleDepth, sampleRate, null);
+	}
+
+	/**
+	 * Create a demodulator with kernels of a DDS cache.
+	 *
+	 * @param freqs
+	 *            Demod frequency of each tone in Hz
+	 * @param windowStarts
+	 *            Window start of each tone
+	 * @param windowWidths
+	 *            Window width of each tone
+	 * @param sampleDepth
+	 *            Sample depth of the raw data
+	 * @param sampleRate
+	 *            Sample rate of the ADC
+	 * @param kernelCache
+	 *            The cache to get kernels from, null for exact frequencies
+	 */
+	ADCDemodulator(double[] freqs, int[] windowStarts, int[] windowWidths, int sampleDepth, double sampleRate,
+			DemodKernelCache kernelCache) {
+		if (freqs.length != windowStarts.length || freqs.length != windowWidths.length) {
+			throw new IllegalArgumentException("Tone arrays have different lengths");
+		}
+		this.sampleDepth = sampleDepth;
+		this.sampleRate = sampleRate;
+		this.freqs = freqs.clone();
+		this.windowStarts = windowStarts.clone();
+		this.windowWidths = windowWidths.clone();
+		this.kernels = new IntBuffer[freqs.length];
+		for (int k = 0; k < freqs.length; k++) {
+			if (windowStarts[k] < 0 || windowWidths[k] < 0 || windowStarts[k] + windowWidths[k] > sampleDepth) {
+				throw new IllegalArgumentException("Window of tone " + k + " is out of sample depth");
+			}
+			if (kernelCache == null) {
+				buildTable(k);
+			} else {
+				loadTable(k, kernelCache);
+			}
+		}
+	}
+
+	/**
+	 * @title forDDS
+	 * @description Create a demodulator matching the ADC's DDS, frequencies are
+	 *              quantized as setDemodFreq does and kernels come from the shared
+	 *              DemodKernelCache, so repeated tones are not recomputed
+	 * @param freqs
+	 *            Demod frequency of each tone in Hz
+	 * @param windowStarts
+	 *            Window start of each tone
+	 * @param windowWidths
+	 *            Window width of each tone
+	 * @param sampleDepth
+	 *            Sample depth of the raw data
+	 * @return The demodulator
+	 */
+	public static ADCDemodulator forDDS(double[] freqs, int[] windowStarts, int[] windowWidths, int sampleDepth) {
+		return forDDS(freqs, windowStarts, windowWidths, sampleDepth, DemodKernelCache.shared());
+	}
+
+	/**
+	 * @title forDDS
+	 * @description Create a demodulator matching the ADC's DDS with kernels of
+	 *              specified cache
+	 * @param kernelCache
+	 *            The kernel cache
+	 * @return The demodulator
+	 */
+	public static ADCDemodulator forDDS(double[] freqs, int[] windowStarts, int[] windowWidths, int sampleDepth,
+			DemodKernelCache kernelCache) {
+		return new ADCDemodulator(freqs, windowStarts, windowWidths, sampleDepth, 1e9, kernelCache);
+	}
+
+	/**
+	 * @title setPool
+	 * @description Set the fork-join pool the triggers are split over
+	 * @param pool
+	 *            The pool, null for running on the calling thread
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @title demod
+	 * @description Demodulate raw data
+	 * @param data
+	 *            Raw data of sampleDepth samples per trigger
+	 * @return The demension is [2, toneCount, trigCount], I then Q
+	 */
+	public double[][][] demod(ADCRawData data) {
+		double[][][] result = new double[2][freqs.length][data.getTrigCount()];
+		demodInto(data, result[0], result[1]);
+		return result;
+	}
+
+	/**
+	 * @title demodInto
+	 * @description Demodulate raw data into caller's arrays
+	 * @param data
+	 *            Raw data of sampleDepth samples per trigger
+	 * @param resultI
+	 *            I of each tone and trigger, [toneCount][at least trigCount]
+	 * @param resultQ
+	 *            Q of each tone and trigger, [toneCount][at least trigCount]
+	 */
+	public void demodInto(ADCRawData data, double[][] resultI, double[][] resultQ) {
+		if (data.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Sample depth of data does not match the demodulator");
+		}
+		int trigCount = data.getTrigCount();
+		if (pool == null || trigCount <= SPLIT) {
+			demodRange(data, 0, trigCount, resultI, resultQ);
+		} else {
+			pool.invoke(new DemodTask(data, 0, trigCount, resultI, resultQ));
+		}
+	}
+
+	/**
+	 * @title getToneCount
+	 * @description Get count of tones
+	 * @return Tone count
+	 */
+	public int getToneCount() {
+		return freqs.length;
+	}
+
+	/**
+	 * @title getFreq
+	 * @description Get demod frequency of a tone
+	 * @param tone
+	 *            Tone index
+	 * @return Frequency in Hz
+	 */
+	public double getFreq(int tone) {
+		return freqs[tone];
+	}
+
+	/**
+	 * @title getSampleDepth
+	 * @description Get sample depth of the demodulator
+	 * @return sampleDepth
+	 */
+	public int getSampleDepth() {
+		return sampleDepth;
+	}
+
+	void demodRange(ADCRawData data, int from, int to, double[][] resultI, double[][] resultQ) {
+		byte[] dataI = data.getChannel(0);
+		byte[] dataQ = data.getChannel(1);
+		for (int i = from; i < to; i++) {
+			int offset = i * sampleDepth;
+			for (int k = 0; k < freqs.length; k++) {
+				int start = offset + windowStarts[k];
+				int width = windowWidths[k];
+				IntBuffer kernel = kernels[k];
+				long sumI = 0;
+				long sumQ = 0;
+				for (int b = 0; b < width; b += BLOCK) {
+					int end = Math.min(width, b + BLOCK);
+					int xc = 0;
+					int ys = 0;
+					int yc = 0;
+					int xs = 0;
+					for (int n = b; n < end; n++) {
+						int x = (dataI[start + n] & 0xff) - 128;
+						int y = (dataQ[start + n] & 0xff) - 128;
+						int cos = kernel.get(n);
+						int sin = kernel.get(width + n);
+						xc += x * cos;
+						ys += y * sin;
+						yc += y * cos;
+						xs += x * sin;
+					}
+					sumI += xc + ys;
+					sumQ += yc - xs;
+				}
+				resultI[k][i] = sumI / (double) KERNEL_SCALE;
+				resultQ[k][i] = sumQ / (double) KERNEL_SCALE;
+			}
+		}
+	}
+
+	private void loadTable(int k, DemodKernelCache kernelCache) {
+		int step = DemodKernelCache.ddsStep(freqs[k], sampleRate);
+		int width = windowWidths[k];
+		kernels[k] = kernelCache.getKernel(step, windowStarts[k], width, sampleDepth);
+		freqs[k] = step / 65536.0 * sampleRate;
+	}
+
+	private void buildTable(int k) {
+		int width = windowWidths[k];
+		int start = windowStarts[k];
+		double omega = 2 * Math.PI * freqs[k] / sampleRate;
+		int[] table = new int[2 * width];
+		for (int n = 0; n < width; n++) {
+			table[n] = (int) Math.round(KERNEL_SCALE * Math.cos(omega * (start + n)));
+			table[width + n] = (int) Math.round(KERNEL_SCALE * Math.sin(omega * (start + n)));
+		}
+		kernels[k] = IntBuffer.wrap(table);
+	}
+
+	/**
+	 * @className DemodTask
+	 * @description Demodulate a range of triggers, split in halves down to SPLIT.
+	 */
+	class DemodTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final ADCRawData data;
+		final int from;
+		final int to;
+		final double[][] resultI;
+		final double[][] resultQ;
+
+		DemodTask(ADCRawData data, int from, int to, double[][] resultI, double[][] resultQ) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.resultI = resultI;
+			this.resultQ = resultQ;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT) {
+				demodRange(data, from, to, resultI, resultQ);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new DemodTask(data, from, middle, resultI, resultQ),
+					new DemodTask(data, middle, to, resultI, resultQ));
+		}
+	}
+}
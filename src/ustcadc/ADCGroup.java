@@ -0,0 +1,486 @@
+/**
+* @project USTCADDA
+* @title ADCGroup.java
+* @package ustcadc
+* @description Parallel acquisition of many ADC boards
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className ADCGroup
+ * @description Acquire from many ADC boards at once, each on its own thread
+ *              and netcard. The threads meet at a barrier and enable their
+ *              boards together, then each receives from its board, so one
+ *              acquisition takes the time of the slowest board. Trigger i of
+ *              every board is the same shot, results are merged by trigger
+ *              index. Each thread receives into arrays of its own, and only
+ *              the results of threads that finished in time are merged, on the
+ *              calling thread. A board that fails or times out is a drop: it
+ *              is reported in the Shots and left out of later acquisitions
+ *              until clearFailures, and in any case until its thread returns,
+ *              since a receive blocked in the driver can not be interrupted.
+ *              All boards must have the same trigCount and demod mode.
+ * @date 2026.10.17
+ */
+public class ADCGroup implements AutoCloseable {
+	/**
+	 * @className Shots
+	 * @description Result of one acquisition of the group.
+	 */
+	public static class Shots {
+		private final int[] boards;
+		private final int trigCount;
+		private final int[] merged;
+		private final ADCRawData[] rawData;
+		private final long[] armTimes;
+		private final long[] recvTimes;
+		private final Map<Integer, Throwable> drops;
+		private final long elapsed;
+
+		Shots(int[] boards, int trigCount, int[] merged, ADCRawData[] rawData, long[] armTimes, long[] recvTimes,
+				Map<Integer, Throwable> drops, long elapsed) {
+			this.boards = boards;
+			this.trigCount = trigCount;
+			this.merged = merged;
+			this.rawData = rawData;
+			this.armTimes = armTimes;
+			this.recvTimes = recvTimes;
+			this.drops = Collections.unmodifiableMap(drops);
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * @title isComplete
+		 * @description Get whether every board delivered its triggers
+		 * @return True if no drop
+		 */
+		public boolean isComplete() {
+			return drops.isEmpty();
+		}
+
+		/**
+		 * @title getDrops
+		 * @description Get failure of each board that delivered nothing
+		 * @return Map from board index to its failure
+		 */
+		public Map<Integer, Throwable> getDrops() {
+			return drops;
+		}
+
+		/**
+		 * @title getBoards
+		 * @description Get indexes of boards taking part, in column order
+		 * @return Board indexes
+		 */
+		public int[] getBoards() {
+			return boards.clone();
+		}
+
+		/**
+		 * @title getTrigCount
+		 * @description Get count of triggers of each board
+		 * @return trigCount
+		 */
+		public int getTrigCount() {
+			return trigCount;
+		}
+
+		/**
+		 * @title getMerged
+		 * @description Get demod data of all boards, I and Q of column c at
+		 *              trigger i are at (i * columns + c) * 2 and the next
+		 *              index, values of dropped boards are 0. Null in raw mode.
+		 * @return merged
+		 */
+		public int[] getMerged() {
+			return merged;
+		}
+
+		/**
+		 * @title getI
+		 * @description Get demod data of channel I
+		 * @param trigger
+		 *            Trigger index
+		 * @param column
+		 *            Column of the board in getBoards
+		 * @return The value
+		 */
+		public int getI(int trigger, int column) {
+			return merged[(trigger * boards.length + column) << 1];
+		}
+
+		/**
+		 * @title getQ
+		 * @description Get demod data of channel Q
+		 * @param trigger
+		 *            Trigger index
+		 * @param column
+		 *            Column of the board in getBoards
+		 * @return The value
+		 */
+		public int getQ(int trigger, int column) {
+			return merged[((trigger * boards.length + column) << 1) + 1];
+		}
+
+		/**
+		 * @title getRawData
+		 * @description Get raw data of one board, null in demod mode or for a
+		 *              dropped board
+		 * @param column
+		 *            Column of the board in getBoards
+		 * @return Raw data
+		 */
+		public ADCRawData getRawData(int column) {
+			return rawData == null ? null : rawData[column];
+		}
+
+		/**
+		 * @title getArmSkew
+		 * @description Get time between the first and the last board enabled
+		 * @return Time in nanoseconds
+		 */
+		public long getArmSkew() {
+			return spread(armTimes);
+		}
+
+		/**
+		 * @title getRecvSkew
+		 * @description Get time between the first and the last board received
+		 * @return Time in nanoseconds
+		 */
+		public long getRecvSkew() {
+			return spread(recvTimes);
+		}
+
+		/**
+		 * @title getElapsed
+		 * @description Get wall clock time of the acquisition
+		 * @return Time in nanoseconds
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d boards x %d triggers, %d dropped, arm skew %.1f us, %.1f ms", boards.length,
+					trigCount, drops.size(), getArmSkew() / 1e3, elapsed / 1e6);
+		}
+
+		private static long spread(long[] times) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for (long time : times) {
+				if (time != 0) {
+					min = Math.min(min, time);
+					max = Math.max(max, time);
+				}
+			}
+			return max < min ? 0 : max - min;
+		}
+	}
+
+	/**
+	 * @className Task
+	 * @description Acquisition of one board on its thread, and what it got.
+	 *              State changes under the lock of the group.
+	 */
+	static class Task {
+		static final int QUEUED = 0;
+		static final int RUNNING = 1;
+		static final int FINISHED = 2;
+		static final int ABANDONED = 3;
+
+		int state = QUEUED;
+		long armTime;
+		long recvTime;
+		int[] dataI;
+		int[] dataQ;
+		ADCRawData rawData;
+	}
+
+	private final List<USTCADC> boards;
+	private final boolean[] isFailed;
+	private final Task[] running;
+	private final ExecutorService executor;
+	private volatile long timeout = 60000;
+	private long maxArmSkew;
+
+	/**
+	 * Create a group with one thread per board.
+	 *
+	 * @param boards
+	 *            The opened and configured boards
+	 */
+	public ADCGroup(List<USTCADC> boards) {
+		this.boards = new ArrayList<USTCADC>(boards);
+		this.isFailed = new boolean[boards.size()];
+		this.running = new Task[boards.size()];
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, boards.size()), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ADCGroup-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @title setTimeout
+	 * @description Set time a board may take for one acquisition
+	 * @param millis
+	 *            The unit is millisecond
+	 */
+	public void setTimeout(long millis) {
+		this.timeout = millis;
+	}
+
+	/**
+	 * @title acquire
+	 * @description Enable every healthy board together and receive from each
+	 *              on its own thread
+	 * @return The shots
+	 */
+	public Shots acquire() {
+		long start = System.nanoTime();
+		final int[] indexes = toArray(getHealthy());
+		if (indexes.length == 0) {
+			throw new IllegalStateException("No healthy ADC in the group");
+		}
+		USTCADC first = boards.get(indexes[0]);
+		final boolean isDemod = first.getDemodMode();
+		final int trigCount = first.getTrigCount();
+		for (int index : indexes) {
+			USTCADC adc = boards.get(index);
+			if (adc.getDemodMode() != isDemod || adc.getTrigCount() != trigCount) {
+				throw new IllegalStateException("ADC " + index + " differs in demod mode or trigCount");
+			}
+		}
+		final int columns = indexes.length;
+		final int[] merged = isDemod ? new int[2 * columns * trigCount] : null;
+		final ADCRawData[] rawData = isDemod ? null : new ADCRawData[columns];
+		final long[] armTimes = new long[columns];
+		final long[] recvTimes = new long[columns];
+		final CyclicBarrier barrier = columns > 1 ? new CyclicBarrier(columns) : null;
+		final Task[] tasks = new Task[columns];
+		List<Future<Task>> futures = new ArrayList<Future<Task>>();
+		for (int c = 0; c < columns; c++) {
+			final USTCADC adc = boards.get(indexes[c]);
+			final Task task = new Task();
+			synchronized (this) {
+				running[indexes[c]] = task;
+			}
+			tasks[c] = task;
+			futures.add(executor.submit(new Callable<Task>() {
+				@Override
+				public Task call() throws Exception {
+					synchronized (ADCGroup.this) {
+						if (task.state == Task.ABANDONED) {
+							return task;
+						}
+						task.state = Task.RUNNING;
+					}
+					try {
+						return receive(adc, task, barrier, isDemod, trigCount);
+					} finally {
+						synchronized (ADCGroup.this) {
+							task.state = Task.FINISHED;
+						}
+					}
+				}
+			}));
+		}
+		Map<Integer, Throwable> drops = new LinkedHashMap<Integer, Throwable>();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		for (int c = 0; c < columns; c++) {
+			try {
+				futures.get(c).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (ExecutionException e) {
+				drops.put(indexes[c], e.getCause());
+				continue;
+			} catch (TimeoutException e) {
+				abandon(tasks[c], futures.get(c));
+				drops.put(indexes[c], e);
+				continue;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abandon(tasks[c], futures.get(c));
+				drops.put(indexes[c], e);
+				continue;
+			}
+			Task task = tasks[c];
+			armTimes[c] = task.armTime;
+			recvTimes[c] = task.recvTime;
+			if (isDemod) {
+				for (int i = 0; i < trigCount; i++) {
+					int k = (i * columns + c) << 1;
+					merged[k] = task.dataI[i];
+					merged[k + 1] = task.dataQ[i];
+				}
+			} else {
+				rawData[c] = task.rawData;
+			}
+		}
+		synchronized (this) {
+			for (int index : drops.keySet()) {
+				isFailed[index] = true;
+			}
+		}
+		Shots shots = new Shots(indexes, trigCount, merged, rawData, armTimes, recvTimes, drops,
+				System.nanoTime() - start);
+		synchronized (this) {
+			maxArmSkew = Math.max(maxArmSkew, shots.getArmSkew());
+		}
+		return shots;
+	}
+
+	/**
+	 * @title getMaxArmSkew
+	 * @description Get the largest arm skew seen by acquire
+	 * @return Time in nanoseconds
+	 */
+	public synchronized long getMaxArmSkew() {
+		return maxArmSkew;
+	}
+
+	/**
+	 * @title getBoard
+	 * @description Get a board of the group
+	 * @param index
+	 *            Index of the board
+	 * @return The board
+	 */
+	public USTCADC getBoard(int index) {
+		return boards.get(index);
+	}
+
+	/**
+	 * @title getBoardCount
+	 * @description Get count of boards
+	 * @return Board count
+	 */
+	public int getBoardCount() {
+		return boards.size();
+	}
+
+	/**
+	 * @title getHealthy
+	 * @description Get indexes of boards not failed and not busy with a
+	 *              previous acquisition
+	 * @return Board indexes
+	 */
+	public synchronized List<Integer> getHealthy() {
+		List<Integer> indexes = new ArrayList<Integer>();
+		for (int i = 0; i < boards.size(); i++) {
+			if (!isFailed[i] && !isBusy(i)) {
+				indexes.add(i);
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * @title clearFailures
+	 * @description Let failed boards take part in acquisitions again, a board
+	 *              whose thread is still blocked waits until it returns
+	 */
+	public synchronized void clearFailures() {
+		for (int i = 0; i < isFailed.length; i++) {
+			isFailed[i] = false;
+		}
+	}
+
+	/**
+	 * @title close
+	 * @description Close every board and stop the threads
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		for (USTCADC adc : boards) {
+			adc.closeADC();
+		}
+	}
+
+	/**
+	 * @title receive
+	 * @description Enable a board with the others and receive its triggers
+	 *              into the task
+	 */
+	private Task receive(USTCADC adc, Task task, CyclicBarrier barrier, boolean isDemod, int trigCount)
+			throws Exception {
+		if (barrier != null) {
+			try {
+				barrier.await(timeout, TimeUnit.MILLISECONDS);
+			} catch (BrokenBarrierException e) {
+				// Another board failed to arrive, acquire anyway.
+			}
+		}
+		task.armTime = System.nanoTime();
+		adc.enableADC();
+		if (isDemod) {
+			task.dataI = new int[trigCount];
+			task.dataQ = new int[trigCount];
+			adc.recvDemoInto(task.dataI, task.dataQ);
+		} else {
+			task.rawData = adc.recvRawData();
+		}
+		task.recvTime = System.nanoTime();
+		return task;
+	}
+
+	/**
+	 * @title abandon
+	 * @description Give up a task not finished in time, a queued one never
+	 *              starts and a running one keeps its board busy until it
+	 *              returns
+	 */
+	private void abandon(Task task, Future<Task> future) {
+		synchronized (this) {
+			if (task.state == Task.QUEUED) {
+				task.state = Task.ABANDONED;
+			}
+		}
+		future.cancel(true);
+	}
+
+	/**
+	 * @title isBusy
+	 * @description Check whether the last task of a board is queued or running
+	 */
+	private boolean isBusy(int index) {
+		Task task = running[index];
+		return task != null && (task.state == Task.QUEUED || task.state == Task.RUNNING);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
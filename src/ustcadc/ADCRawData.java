@@ -0,0 +1,178 @@
+/**
+* @project USTCADDA
+* @title ADCRawData.java
+* @package ustcadc
+* @description Flat raw data of one ADC acquisition
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @className ADCRawData
+ * @description Raw data of one acquisition, kept as the driver returns it: one
+ *              unsigned byte per sample, trigger after trigger, one array per
+ *              channel. Sample j of trigger i is at index i * sampleDepth + j.
+ * @date 2026.10.17
+ */
+public class ADCRawData {
+	/**
+	 * @fields trigCount : The trigger count of the data.
+	 */
+	private final int trigCount;
+	/**
+	 * @fields sampleDepth : The sample depth of the data.
+	 */
+	private final int sampleDepth;
+	/**
+	 * @fields dataI : Samples of channel I.
+	 */
+	private final byte[] dataI;
+	/**
+	 * @fields dataQ : Samples of channel Q.
+	 */
+	private final byte[] dataQ;
+
+	/**
+	 * Create empty raw data.
+	 *
+	 * @param trigCount
+	 *            Trigger count
+	 * @param sampleDepth
+	 *            Sample depth
+	 */
+	public ADCRawData(int trigCount, int sampleDepth) {
+		this(trigCount, sampleDepth, new byte[trigCount * sampleDepth], new byte[trigCount * sampleDepth]);
+	}
+
+	/**
+	 * Create raw data on existing arrays.
+	 *
+	 * @param trigCount
+	 *            Trigger count
+	 * @param sampleDepth
+	 *            Sample depth
+	 * @param dataI
+	 *            Samples of channel I, at least trigCount * sampleDepth
+	 * @param dataQ
+	 *            Samples of channel Q, at least trigCount * sampleDepth
+	 */
+	public ADCRawData(int trigCount, int sampleDepth, byte[] dataI, byte[] dataQ) {
+		if (dataI.length < trigCount * sampleDepth || dataQ.length < trigCount * sampleDepth) {
+			throw new IllegalArgumentException("Data is shorter than trigCount * sampleDepth");
+		}
+		this.trigCount = trigCount;
+		this.sampleDepth = sampleDepth;
+		this.dataI = dataI;
+		this.dataQ = dataQ;
+	}
+
+	/**
+	 * @title index
+	 * @description Get index of a sample in the channel array
+	 * @param trig
+	 *            Trigger index
+	 * @param sample
+	 *            Sample index
+	 * @return trig * sampleDepth + sample
+	 */
+	public int index(int trig, int sample) {
+		return trig * sampleDepth + sample;
+	}
+
+	/**
+	 * @title get
+	 * @description Get one sample
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @param trig
+	 *            Trigger index
+	 * @param sample
+	 *            Sample index
+	 * @return The unsigned sample value, 0~255
+	 */
+	public int get(int channel, int trig, int sample) {
+		return getChannel(channel)[trig * sampleDepth + sample] & 0xff;
+	}
+
+	/**
+	 * @title getI
+	 * @description Get one sample of channel I
+	 * @return The unsigned sample value, 0~255
+	 */
+	public int getI(int trig, int sample) {
+		return dataI[trig * sampleDepth + sample] & 0xff;
+	}
+
+	/**
+	 * @title getQ
+	 * @description Get one sample of channel Q
+	 * @return The unsigned sample value, 0~255
+	 */
+	public int getQ(int trig, int sample) {
+		return dataQ[trig * sampleDepth + sample] & 0xff;
+	}
+
+	/**
+	 * @title getChannel
+	 * @description Get the backing array of a channel
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @return The channel array, not a copy
+	 */
+	public byte[] getChannel(int channel) {
+		return channel == 0 ? dataI : dataQ;
+	}
+
+	/**
+	 * @title getBuffer
+	 * @description Get a read only ByteBuffer view of a channel
+	 * @param channel
+	 *            0 for I, 1 for Q
+	 * @return The view, limit is trigCount * sampleDepth
+	 */
+	public ByteBuffer getBuffer(int channel) {
+		return ByteBuffer.wrap(getChannel(channel), 0, trigCount * sampleDepth).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @title getTrigCount
+	 * @description Get trigger count of the data
+	 * @return trigCount
+	 */
+	public int getTrigCount() {
+		return trigCount;
+	}
+
+	/**
+	 * @title getSampleDepth
+	 * @description Get sample depth of the data
+	 * @return sampleDepth
+	 */
+	public int getSampleDepth() {
+		return sampleDepth;
+	}
+
+	/**
+	 * @title toShortArray
+	 * @description Convert to the layout returned by USTCADC.recvData
+	 * @return The demension is [channelAmount, trigCount, sampleDepth]
+	 */
+	public short[][][] toShortArray() {
+		short data[][][] = new short[2][trigCount][sampleDepth];
+		for (int i = 0; i < trigCount; i++) {
+			short[] lineI = data[0][i];
+			short[] lineQ = data[1][i];
+			int offset = i * sampleDepth;
+			for (int j = 0; j < sampleDepth; j++) {
+				lineI[j] = (short) (dataI[offset + j] & 0x00ff);
+				lineQ[j] = (short) (dataQ[offset + j] & 0x00ff);
+			}
+		}
+		return data;
+	}
+}
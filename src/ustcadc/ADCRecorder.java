@@ -0,0 +1,309 @@
+/**
+* @project USTCADDA
+* @title ADCRecorder.java
+* @package ustcadc
+* @description Append only recorder of ADC acquisitions on memory mapped file
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @className ADCRecorder
+ * @description Record acquisitions of one configuration into a file read by
+ *              ADCRecording. The file is a header of HEADER_SIZE bytes, then
+ *              fixed size records, then an index of {offset, timestamp} per
+ *              record written on close. A raw record is trigCount * sampleDepth
+ *              bytes of I then of Q, 8 bits per sample as received. A demod
+ *              record is trigCount pairs of I, Q ints in the recording host's
+ *              byte order, as RecvDemo returns them. Records are written through
+ *              memory mapped chunks holding a whole number of records, and
+ *              appendFrom receives from the ADC straight into the mapping.
+ * @date 2026.10.17
+ */
+public class ADCRecorder implements AutoCloseable {
+	/**
+	 * @fields MAGIC : Magic number at the start of a recording, "USTCADC1".
+	 */
+	public static final long MAGIC = 0x5553544341444331L;
+	/**
+	 * @fields VERSION : Version of the file format.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * @fields HEADER_SIZE : Size of the header in bytes.
+	 */
+	public static final int HEADER_SIZE = 128;
+	/**
+	 * @fields DEFAULT_CHUNK_SIZE : Default size of mapped chunks, 64MB.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+	static final int OFFSET_MAGIC = 0;
+	static final int OFFSET_VERSION = 8;
+	static final int OFFSET_DEMOD = 12;
+	static final int OFFSET_SAMPLE_DEPTH = 16;
+	static final int OFFSET_TRIG_COUNT = 20;
+	static final int OFFSET_WINDOW_START = 24;
+	static final int OFFSET_WINDOW_WIDTH = 28;
+	static final int OFFSET_DEMOD_FREQ = 32;
+	static final int OFFSET_SAMPLE_RATE = 40;
+	static final int OFFSET_RECORD_SIZE = 48;
+	static final int OFFSET_RECORDS_PER_CHUNK = 52;
+	static final int OFFSET_RECORD_COUNT = 56;
+	static final int OFFSET_INDEX = 64;
+	static final int OFFSET_START_TIME = 72;
+	static final int OFFSET_BIG_ENDIAN = 80;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final boolean isDemod;
+	private final int sampleDepth;
+	private final int trigCount;
+	private final int recordSize;
+	private final int recordsPerChunk;
+	private MappedByteBuffer chunk;
+	private long chunkIndex = -1;
+	private long recordCount;
+	private long[] timestamps = new long[1024];
+	private boolean isClosed;
+
+	/**
+	 * Create a recorder with the current configuration of an ADC.
+	 *
+	 * @param file
+	 *            The file, replaced if existing
+	 * @param adc
+	 *            The configured ADC
+	 * @throws IOException
+	 *             Throw exception when the file can not be created
+	 */
+	public ADCRecorder(Path file, USTCADC adc) throws IOException {
+		this(file, adc.getDemodMode(), adc.getSampleDepth(), adc.getTrigCount(), adc.getWindowStart(),
+				adc.getWindowWidth(), adc.getDemodFreq(), adc.getSampleRate(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a recorder.
+	 *
+	 * @param file
+	 *            The file, replaced if existing
+	 * @param isDemod
+	 *            True for demod records, false for raw records
+	 * @param sampleDepth
+	 *            Sample depth
+	 * @param trigCount
+	 *            Trigger count of each record
+	 * @param windowStart
+	 *            Demod window start
+	 * @param windowWidth
+	 *            Demod window width
+	 * @param demodFreq
+	 *            Demod frequency
+	 * @param sampleRate
+	 *            Sample rate
+	 * @param chunkSize
+	 *            Size of mapped chunks in bytes, at least one record
+	 * @throws IOException
+	 *             Throw exception when the file can not be created
+	 */
+	public ADCRecorder(Path file, boolean isDemod, int sampleDepth, int trigCount, int windowStart, int windowWidth,
+			double demodFreq, double sampleRate, int chunkSize) throws IOException {
+		long size = isDemod ? 8L * trigCount : 2L * trigCount * sampleDepth;
+		if (size <= 0 || size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Record size " + size + " is out of range");
+		}
+		this.isDemod = isDemod;
+		this.sampleDepth = sampleDepth;
+		this.trigCount = trigCount;
+		this.recordSize = (int) size;
+		this.recordsPerChunk = Math.max(1, chunkSize / recordSize);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(OFFSET_MAGIC, MAGIC);
+		header.putInt(OFFSET_VERSION, VERSION);
+		header.putInt(OFFSET_DEMOD, isDemod ? 1 : 0);
+		header.putInt(OFFSET_SAMPLE_DEPTH, sampleDepth);
+		header.putInt(OFFSET_TRIG_COUNT, trigCount);
+		header.putInt(OFFSET_WINDOW_START, windowStart);
+		header.putInt(OFFSET_WINDOW_WIDTH, windowWidth);
+		header.putDouble(OFFSET_DEMOD_FREQ, demodFreq);
+		header.putDouble(OFFSET_SAMPLE_RATE, sampleRate);
+		header.putInt(OFFSET_RECORD_SIZE, recordSize);
+		header.putInt(OFFSET_RECORDS_PER_CHUNK, recordsPerChunk);
+		header.putLong(OFFSET_RECORD_COUNT, 0);
+		header.putLong(OFFSET_INDEX, 0);
+		header.putLong(OFFSET_START_TIME, System.currentTimeMillis());
+		header.putInt(OFFSET_BIG_ENDIAN, ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0);
+	}
+
+	/**
+	 * @title append
+	 * @description Append a raw record
+	 * @param data
+	 *            Raw data of the recorder's trigCount and sampleDepth
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public void append(ADCRawData data) throws IOException {
+		if (isDemod || data.getTrigCount() != trigCount || data.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Raw data does not match the recording");
+		}
+		int length = trigCount * sampleDepth;
+		ByteBuffer record = nextRecord();
+		record.put(data.getChannel(0), 0, length);
+		record.put(data.getChannel(1), 0, length);
+		commit();
+	}
+
+	/**
+	 * @title append
+	 * @description Append a demod record
+	 * @param dataI
+	 *            Demod I, at least trigCount
+	 * @param dataQ
+	 *            Demod Q, at least trigCount
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public void append(int[] dataI, int[] dataQ) throws IOException {
+		if (!isDemod) {
+			throw new IllegalArgumentException("Demod data does not match the recording");
+		}
+		ByteBuffer record = nextRecord().order(ByteOrder.nativeOrder());
+		for (int i = 0; i < trigCount; i++) {
+			record.putInt(dataI[i]);
+			record.putInt(dataQ[i]);
+		}
+		commit();
+	}
+
+	/**
+	 * @title appendFrom
+	 * @description Receive one acquisition from the ADC straight into the file,
+	 *              the ADC must have the recorder's configuration
+	 * @param adc
+	 *            The ADC
+	 * @throws Exception
+	 *             Throw exception when receive data or mapping failed
+	 */
+	public void appendFrom(USTCADC adc) throws Exception {
+		if (adc.getDemodMode() != isDemod || adc.getTrigCount() != trigCount
+				|| (!isDemod && adc.getSampleDepth() != sampleDepth)) {
+			throw new IllegalArgumentException("ADC configuration does not match the recording");
+		}
+		ByteBuffer record = nextRecord();
+		if (isDemod) {
+			adc.recvDemoInto(record);
+		} else {
+			int length = trigCount * sampleDepth;
+			ByteBuffer dataI = record.slice();
+			dataI.limit(length);
+			record.position(record.position() + length);
+			adc.recvDataInto(dataI, record.slice());
+		}
+		commit();
+	}
+
+	/**
+	 * @title getRecordCount
+	 * @description Get count of records appended
+	 * @return recordCount
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @title close
+	 * @description Write the index, update the header and close the file
+	 * @throws IOException
+	 *             Throw exception when writing failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		long indexOffset = recordOffset(recordCount);
+		ByteBuffer index = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		long position = indexOffset;
+		for (long r = 0; r < recordCount; r++) {
+			index.putLong(recordOffset(r));
+			index.putLong(timestamps[(int) r]);
+			if (!index.hasRemaining() || r == recordCount - 1) {
+				index.flip();
+				while (index.hasRemaining()) {
+					position += channel.write(index, position);
+				}
+				index.clear();
+			}
+		}
+		header.putLong(OFFSET_INDEX, indexOffset);
+		header.putLong(OFFSET_RECORD_COUNT, recordCount);
+		header.force();
+		chunk = null;
+		try {
+			channel.truncate(position);
+		} catch (IOException e) {
+			// Some platforms refuse to truncate mapped files, the slack is harmless.
+		}
+		channel.close();
+	}
+
+	/**
+	 * @title recordOffset
+	 * @description Get file offset of a record
+	 */
+	static long recordOffset(long record, int recordSize, int recordsPerChunk) {
+		return HEADER_SIZE + (record / recordsPerChunk) * (long) recordsPerChunk * recordSize
+				+ (record % recordsPerChunk) * (long) recordSize;
+	}
+
+	private long recordOffset(long record) {
+		return recordOffset(record, recordSize, recordsPerChunk);
+	}
+
+	private ByteBuffer nextRecord() throws IOException {
+		if (isClosed) {
+			throw new IOException("Recorder is closed");
+		}
+		long index = recordCount / recordsPerChunk;
+		if (index != chunkIndex) {
+			if (chunk != null) {
+				chunk.force();
+			}
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE, recordOffset(index * recordsPerChunk),
+					(long) recordsPerChunk * recordSize);
+			chunkIndex = index;
+		}
+		ByteBuffer record = chunk.duplicate();
+		int position = (int) (recordCount % recordsPerChunk) * recordSize;
+		record.limit(position + recordSize).position(position);
+		return record.slice();
+	}
+
+	private void commit() {
+		if (recordCount == timestamps.length) {
+			long[] list = new long[timestamps.length * 2];
+			System.arraycopy(timestamps, 0, list, 0, timestamps.length);
+			timestamps = list;
+		}
+		timestamps[(int) recordCount] = System.nanoTime();
+		recordCount++;
+		header.putLong(OFFSET_RECORD_COUNT, recordCount);
+	}
+}
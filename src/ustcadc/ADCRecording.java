@@ -0,0 +1,366 @@
+/**
+* @project USTCADDA
+* @title ADCRecording.java
+* @package ustcadc
+* @description Random access reader of files written by ADCRecorder
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @className ADCRecording
+ * @description Read a recording by record or by trigger. Chunks are mapped
+ *              read only on first access and records are returned as views of
+ *              the mapping, so nothing is read that is not asked for. A
+ *              recording whose recorder did not close has no index, its record
+ *              count is the last one committed and its timestamps are 0.
+ * @date 2026.10.17
+ */
+public class ADCRecording implements AutoCloseable {
+	private final FileChannel channel;
+	private final boolean isDemod;
+	private final int sampleDepth;
+	private final int trigCount;
+	private final int windowStart;
+	private final int windowWidth;
+	private final double demodFreq;
+	private final double sampleRate;
+	private final long startTime;
+	private final ByteOrder demodOrder;
+	private final int recordSize;
+	private final int recordsPerChunk;
+	private final long recordCount;
+	private final long[] timestamps;
+	private final MappedByteBuffer[] chunks;
+
+	/**
+	 * Open a recording.
+	 *
+	 * @param file
+	 *            The file
+	 * @throws IOException
+	 *             Throw exception when the file is not a recording
+	 */
+	public ADCRecording(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(ADCRecorder.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+			}
+			if (header.hasRemaining() || header.getLong(ADCRecorder.OFFSET_MAGIC) != ADCRecorder.MAGIC) {
+				throw new IOException(file + " is not an ADC recording");
+			}
+			if (header.getInt(ADCRecorder.OFFSET_VERSION) != ADCRecorder.VERSION) {
+				throw new IOException("Unsupported recording version " + header.getInt(ADCRecorder.OFFSET_VERSION));
+			}
+			isDemod = header.getInt(ADCRecorder.OFFSET_DEMOD) != 0;
+			sampleDepth = header.getInt(ADCRecorder.OFFSET_SAMPLE_DEPTH);
+			trigCount = header.getInt(ADCRecorder.OFFSET_TRIG_COUNT);
+			windowStart = header.getInt(ADCRecorder.OFFSET_WINDOW_START);
+			windowWidth = header.getInt(ADCRecorder.OFFSET_WINDOW_WIDTH);
+			demodFreq = header.getDouble(ADCRecorder.OFFSET_DEMOD_FREQ);
+			sampleRate = header.getDouble(ADCRecorder.OFFSET_SAMPLE_RATE);
+			startTime = header.getLong(ADCRecorder.OFFSET_START_TIME);
+			demodOrder = header.getInt(ADCRecorder.OFFSET_BIG_ENDIAN) != 0 ? ByteOrder.BIG_ENDIAN
+					: ByteOrder.LITTLE_ENDIAN;
+			recordSize = header.getInt(ADCRecorder.OFFSET_RECORD_SIZE);
+			recordsPerChunk = header.getInt(ADCRecorder.OFFSET_RECORDS_PER_CHUNK);
+			long count = header.getLong(ADCRecorder.OFFSET_RECORD_COUNT);
+			long indexOffset = header.getLong(ADCRecorder.OFFSET_INDEX);
+			if (count < 0 || count > Integer.MAX_VALUE
+					|| ADCRecorder.recordOffset(count, recordSize, recordsPerChunk) > channel.size()) {
+				throw new IOException("Recording is truncated");
+			}
+			recordCount = count;
+			timestamps = new long[(int) count];
+			if (indexOffset != 0) {
+				readIndex(indexOffset);
+			}
+			chunks = new MappedByteBuffer[(int) ((count + recordsPerChunk - 1) / recordsPerChunk)];
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @title getRecord
+	 * @description Get a read only view of one record, raw I block then Q
+	 *              block, or demod I, Q int pairs in getDemodOrder
+	 * @param record
+	 *            Record index
+	 * @return The record
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public ByteBuffer getRecord(long record) throws IOException {
+		if (record < 0 || record >= recordCount) {
+			throw new IndexOutOfBoundsException("Record " + record + " of " + recordCount);
+		}
+		int index = (int) (record / recordsPerChunk);
+		MappedByteBuffer chunk = chunks[index];
+		if (chunk == null) {
+			long start = ADCRecorder.recordOffset((long) index * recordsPerChunk, recordSize, recordsPerChunk);
+			long size = Math.min((long) recordsPerChunk, recordCount - (long) index * recordsPerChunk) * recordSize;
+			chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			chunks[index] = chunk;
+		}
+		ByteBuffer view = chunk.asReadOnlyBuffer();
+		int position = (int) (record % recordsPerChunk) * recordSize;
+		view.limit(position + recordSize).position(position);
+		return view.slice().order(isDemod ? demodOrder : ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @title readRecord
+	 * @description Copy one raw record
+	 * @param record
+	 *            Record index
+	 * @param data
+	 *            Receive the record, of the recording's trigCount and
+	 *            sampleDepth
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public void readRecord(long record, ADCRawData data) throws IOException {
+		if (isDemod || data.getTrigCount() != trigCount || data.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Raw data does not match the recording");
+		}
+		int length = trigCount * sampleDepth;
+		ByteBuffer view = getRecord(record);
+		view.get(data.getChannel(0), 0, length);
+		view.get(data.getChannel(1), 0, length);
+	}
+
+	/**
+	 * @title readDemo
+	 * @description Copy one demod record
+	 * @param record
+	 *            Record index
+	 * @param dataI
+	 *            Receive demod I, at least trigCount
+	 * @param dataQ
+	 *            Receive demod Q, at least trigCount
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public void readDemo(long record, int[] dataI, int[] dataQ) throws IOException {
+		if (!isDemod) {
+			throw new IllegalArgumentException("Recording is not demod");
+		}
+		ByteBuffer view = getRecord(record);
+		for (int i = 0; i < trigCount; i++) {
+			dataI[i] = view.getInt();
+			dataQ[i] = view.getInt();
+		}
+	}
+
+	/**
+	 * @title readTrigger
+	 * @description Copy the samples of one trigger of a raw recording
+	 * @param trigger
+	 *            Trigger index counted from the first record
+	 * @param dataI
+	 *            Receive I, at least sampleDepth
+	 * @param dataQ
+	 *            Receive Q, at least sampleDepth
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public void readTrigger(long trigger, byte[] dataI, byte[] dataQ) throws IOException {
+		if (isDemod) {
+			throw new IllegalArgumentException("Recording is not raw");
+		}
+		ByteBuffer view = getRecord(trigger / trigCount);
+		int offset = (int) (trigger % trigCount) * sampleDepth;
+		view.position(offset);
+		view.get(dataI, 0, sampleDepth);
+		view.position(offset + trigCount * sampleDepth);
+		view.get(dataQ, 0, sampleDepth);
+	}
+
+	/**
+	 * @title readTrigger
+	 * @description Read demod I/Q of one trigger of a demod recording
+	 * @param trigger
+	 *            Trigger index counted from the first record
+	 * @return {I, Q}
+	 * @throws IOException
+	 *             Throw exception when mapping failed
+	 */
+	public int[] readTrigger(long trigger) throws IOException {
+		if (!isDemod) {
+			throw new IllegalArgumentException("Recording is not demod");
+		}
+		ByteBuffer view = getRecord(trigger / trigCount);
+		int offset = (int) (trigger % trigCount) * 8;
+		return new int[] { view.getInt(offset), view.getInt(offset + 4) };
+	}
+
+	/**
+	 * @title getTimestamp
+	 * @description Get System.nanoTime when a record was appended, 0 if the
+	 *              recording has no index
+	 * @param record
+	 *            Record index
+	 * @return Timestamp in nanoseconds
+	 */
+	public long getTimestamp(long record) {
+		return timestamps[(int) record];
+	}
+
+	/**
+	 * @title hasIndex
+	 * @description Get whether the recorder was closed and wrote the index
+	 * @return True if there are timestamps
+	 */
+	public boolean hasIndex() {
+		return recordCount == 0 || timestamps[0] != 0;
+	}
+
+	/**
+	 * @title getDemodMode
+	 * @description Get whether records are demod
+	 * @return isDemod
+	 */
+	public boolean getDemodMode() {
+		return isDemod;
+	}
+
+	/**
+	 * @title getSampleDepth
+	 * @description Get sample depth of the recording
+	 * @return sampleDepth
+	 */
+	public int getSampleDepth() {
+		return sampleDepth;
+	}
+
+	/**
+	 * @title getTrigCount
+	 * @description Get trigger count of each record
+	 * @return trigCount
+	 */
+	public int getTrigCount() {
+		return trigCount;
+	}
+
+	/**
+	 * @title getWindowStart
+	 * @description Get demod window start of the recording
+	 * @return windowStart
+	 */
+	public int getWindowStart() {
+		return windowStart;
+	}
+
+	/**
+	 * @title getWindowWidth
+	 * @description Get demod window width of the recording
+	 * @return windowWidth
+	 */
+	public int getWindowWidth() {
+		return windowWidth;
+	}
+
+	/**
+	 * @title getDemodFreq
+	 * @description Get demod frequency of the recording
+	 * @return demodFreq
+	 */
+	public double getDemodFreq() {
+		return demodFreq;
+	}
+
+	/**
+	 * @title getSampleRate
+	 * @description Get sample rate of the recording
+	 * @return sampleRate
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @title getStartTime
+	 * @description Get System.currentTimeMillis when recording started
+	 * @return Start time in milliseconds
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @title getDemodOrder
+	 * @description Get byte order of demod records
+	 * @return Byte order of the recording host
+	 */
+	public ByteOrder getDemodOrder() {
+		return demodOrder;
+	}
+
+	/**
+	 * @title getRecordSize
+	 * @description Get size of one record in bytes
+	 * @return recordSize
+	 */
+	public int getRecordSize() {
+		return recordSize;
+	}
+
+	/**
+	 * @title getRecordCount
+	 * @description Get count of records
+	 * @return recordCount
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @title getTriggerTotal
+	 * @description Get count of triggers in all records
+	 * @return recordCount * trigCount
+	 */
+	public long getTriggerTotal() {
+		return recordCount * trigCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void readIndex(long indexOffset) throws IOException {
+		ByteBuffer index = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		long position = indexOffset;
+		int record = 0;
+		while (record < recordCount) {
+			index.clear();
+			index.limit((int) Math.min(index.capacity(), (recordCount - record) * 16));
+			while (index.hasRemaining()) {
+				int size = channel.read(index, position);
+				if (size < 0) {
+					throw new IOException("Recording index is truncated");
+				}
+				position += size;
+			}
+			index.flip();
+			while (index.hasRemaining()) {
+				index.getLong();
+				timestamps[record++] = index.getLong();
+			}
+		}
+	}
+}
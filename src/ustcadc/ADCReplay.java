@@ -0,0 +1,418 @@
+/**
+* @project USTCADDA
+* @title ADCReplay.java
+* @package ustcadc
+* @description An ADC backend serving recorded acquisitions
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * @className ADCReplay
+ * @description Replay backend. RecvData and RecvDemo are answered from
+ *              recordings written by ADCRecorder, trigger after trigger, by
+ *              copying from the mapped file into the receive buffer with no
+ *              intermediate array. Each opened board has its own position in
+ *              the recordings. With ORIGINAL pacing, triggers are served no
+ *              faster than they were recorded, as given by the record
+ *              timestamps. With AS_FAST pacing they are served at once, so the
+ *              caller measures its own throughput.
+ * @date 2026.10.17
+ */
+public class ADCReplay implements ADCBackend {
+	/**
+	 * @fields ERR_INVALID_ID : Error code of unopened ID.
+	 */
+	public static final int ERR_INVALID_ID = 1;
+	/**
+	 * @fields ERR_BAD_FRAME : Error code of undecodable instruction frame.
+	 */
+	public static final int ERR_BAD_FRAME = 2;
+	/**
+	 * @fields ERR_BAD_SIZE : Error code of sample depth different from the
+	 *         recording.
+	 */
+	public static final int ERR_BAD_SIZE = 3;
+	/**
+	 * @fields ERR_NO_RECORDING : Error code of a mode without recording.
+	 */
+	public static final int ERR_NO_RECORDING = 4;
+	/**
+	 * @fields ERR_END : Error code of recording exhausted without loop.
+	 */
+	public static final int ERR_END = 5;
+	/**
+	 * @fields ERR_IO : Error code of failed reading of the recording.
+	 */
+	public static final int ERR_IO = 6;
+
+	/**
+	 * @className Pacing
+	 * @description How fast triggers are served.
+	 */
+	public enum Pacing {
+		/**
+		 * Serve at once.
+		 */
+		AS_FAST,
+		/**
+		 * Serve at the recorded trigger rate.
+		 */
+		ORIGINAL
+	}
+
+	/**
+	 * @className Board
+	 * @description State of one replayed ADC board.
+	 */
+	static class Board {
+		byte[] srcMac;
+		byte[] dstMac;
+		long rawCursor;
+		long demodCursor;
+		long rawStart;
+		long demodStart;
+	}
+
+	private final ADCRecording raw;
+	private final ADCRecording demod;
+	private final Map<Integer, Board> boards = new ConcurrentHashMap<Integer, Board>();
+	private final AtomicInteger nextID = new AtomicInteger(1);
+	private final AtomicLong triggersServed = new AtomicLong();
+	private final AtomicLong bytesServed = new AtomicLong();
+	private volatile Pacing pacing = Pacing.AS_FAST;
+	private volatile boolean isLoop = false;
+
+	/**
+	 * Create a replay of one recording, raw or demod.
+	 *
+	 * @param recording
+	 *            The recording
+	 */
+	public ADCReplay(ADCRecording recording) {
+		this(recording.getDemodMode() ? null : recording, recording.getDemodMode() ? recording : null);
+	}
+
+	/**
+	 * Create a replay of a raw and a demod recording.
+	 *
+	 * @param raw
+	 *            Raw recording for RecvData, may be null
+	 * @param demod
+	 *            Demod recording for RecvDemo, may be null
+	 */
+	public ADCReplay(ADCRecording raw, ADCRecording demod) {
+		if ((raw != null && raw.getDemodMode()) || (demod != null && !demod.getDemodMode())) {
+			throw new IllegalArgumentException("Recordings are not of the expected mode");
+		}
+		this.raw = raw;
+		this.demod = demod;
+	}
+
+	/**
+	 * @title setPacing
+	 * @description Set pacing of boards
+	 * @param pacing
+	 *            AS_FAST or ORIGINAL
+	 */
+	public void setPacing(Pacing pacing) {
+		this.pacing = pacing;
+	}
+
+	/**
+	 * @title setLoop
+	 * @description Set whether to restart from the first trigger when a
+	 *              recording is exhausted, else ERR_END is returned
+	 * @param isLoop
+	 *            True for loop
+	 */
+	public void setLoop(boolean isLoop) {
+		this.isLoop = isLoop;
+	}
+
+	/**
+	 * @title rewind
+	 * @description Move a board back to the first trigger
+	 * @param id
+	 *            ID of ADC
+	 */
+	public void rewind(int id) {
+		Board board = boards.get(id);
+		if (board != null) {
+			synchronized (board) {
+				board.rawCursor = 0;
+				board.demodCursor = 0;
+				board.rawStart = 0;
+				board.demodStart = 0;
+			}
+		}
+	}
+
+	/**
+	 * @title getTriggersServed
+	 * @description Get count of triggers served to all boards
+	 * @return Trigger count
+	 */
+	public long getTriggersServed() {
+		return triggersServed.get();
+	}
+
+	/**
+	 * @title getBytesServed
+	 * @description Get bytes copied into receive buffers of all boards
+	 * @return Byte count
+	 */
+	public long getBytesServed() {
+		return bytesServed.get();
+	}
+
+	@Override
+	public int OpenADC(IntByReference pID, String srcMac, String dstMac) {
+		Board board = new Board();
+		try {
+			board.srcMac = ADCSimulator.parseMac(srcMac);
+			board.dstMac = ADCSimulator.parseMac(dstMac);
+		} catch (RuntimeException e) {
+			return ERR_BAD_FRAME;
+		}
+		int id = nextID.getAndIncrement();
+		boards.put(id, board);
+		pID.setValue(id);
+		return 0;
+	}
+
+	@Override
+	public int CloseADC(int id) {
+		return boards.remove(id) == null ? ERR_INVALID_ID : 0;
+	}
+
+	@Override
+	public int SendData(int id, int len, Pointer pData) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		int pos = 0;
+		while (pos < len) {
+			int size = ADCSimulator.instructionSize(pData.getByte(pos), len - pos > 1 ? pData.getByte(pos + 1) : -1);
+			if (size == 0 || pos + size > len) {
+				return ERR_BAD_FRAME;
+			}
+			if (pData.getByte(pos) == 0 && pData.getByte(pos + 1) == 17) {
+				synchronized (board) {
+					board.srcMac = pData.getByteArray(pos + 2, 6);
+				}
+			}
+			pos += size;
+		}
+		return 0;
+	}
+
+	@Override
+	public int RecvData(int id, int row, int column, Pointer pDataI, Pointer pDataQ) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		if (raw == null) {
+			return ERR_NO_RECORDING;
+		}
+		if (row <= 0 || column != raw.getSampleDepth()) {
+			return ERR_BAD_SIZE;
+		}
+		long deadline;
+		synchronized (board) {
+			int trigCount = raw.getTrigCount();
+			long total = raw.getTriggerTotal();
+			long length = (long) row * column;
+			ByteBuffer dstI = pDataI.getByteBuffer(0, length);
+			ByteBuffer dstQ = pDataQ.getByteBuffer(0, length);
+			try {
+				for (int done = 0; done < row;) {
+					if (board.rawCursor == total) {
+						if (!isLoop || total == 0) {
+							return ERR_END;
+						}
+						board.rawCursor = 0;
+						board.rawStart += duration(raw);
+					}
+					int offset = (int) (board.rawCursor % trigCount);
+					int count = Math.min(row - done, trigCount - offset);
+					ByteBuffer record = raw.getRecord(board.rawCursor / trigCount);
+					copy(record, offset * column, dstI, count * column);
+					copy(record, (trigCount + offset) * column, dstQ, count * column);
+					board.rawCursor += count;
+					done += count;
+				}
+			} catch (IOException e) {
+				return ERR_IO;
+			}
+			if (board.rawStart == 0) {
+				board.rawStart = System.nanoTime() - due(raw, board.rawCursor - row);
+			}
+			deadline = board.rawStart + due(raw, board.rawCursor);
+		}
+		triggersServed.addAndGet(row);
+		bytesServed.addAndGet(2L * row * column);
+		pace(deadline);
+		return 0;
+	}
+
+	@Override
+	public int RecvDemo(int id, int row, Pointer pData) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		if (demod == null) {
+			return ERR_NO_RECORDING;
+		}
+		if (row <= 0) {
+			return ERR_BAD_SIZE;
+		}
+		long deadline;
+		synchronized (board) {
+			int trigCount = demod.getTrigCount();
+			long total = demod.getTriggerTotal();
+			ByteBuffer dst = pData.getByteBuffer(0, 8L * row).order(ByteOrder.nativeOrder());
+			boolean isSwap = demod.getDemodOrder() != ByteOrder.nativeOrder();
+			try {
+				for (int done = 0; done < row;) {
+					if (board.demodCursor == total) {
+						if (!isLoop || total == 0) {
+							return ERR_END;
+						}
+						board.demodCursor = 0;
+						board.demodStart += duration(demod);
+					}
+					int offset = (int) (board.demodCursor % trigCount);
+					int count = Math.min(row - done, trigCount - offset);
+					ByteBuffer record = demod.getRecord(board.demodCursor / trigCount);
+					if (isSwap) {
+						for (int i = 0; i < 2 * count; i++) {
+							dst.putInt(record.getInt(offset * 8 + i * 4));
+						}
+					} else {
+						copy(record, offset * 8, dst, count * 8);
+					}
+					board.demodCursor += count;
+					done += count;
+				}
+			} catch (IOException e) {
+				return ERR_IO;
+			}
+			if (board.demodStart == 0) {
+				board.demodStart = System.nanoTime() - due(demod, board.demodCursor - row);
+			}
+			deadline = board.demodStart + due(demod, board.demodCursor);
+		}
+		triggersServed.addAndGet(row);
+		bytesServed.addAndGet(8L * row);
+		pace(deadline);
+		return 0;
+	}
+
+	@Override
+	public int GetMacAddress(int id, int isDst, Pointer pMac) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		synchronized (board) {
+			pMac.write(0, isDst != 0 ? board.dstMac : board.srcMac, 0, 6);
+		}
+		return 0;
+	}
+
+	@Override
+	public int GetErrorMsg(int id, int errorCode, Pointer strMsg) {
+		String msg;
+		switch (errorCode) {
+		case ERR_INVALID_ID:
+			msg = "Replayed ADC " + id + " is not open";
+			break;
+		case ERR_BAD_FRAME:
+			msg = "Replayed ADC " + id + " can not decode instruction";
+			break;
+		case ERR_BAD_SIZE:
+			msg = "Replayed ADC " + id + " got sample depth different from the recording";
+			break;
+		case ERR_NO_RECORDING:
+			msg = "Replayed ADC " + id + " has no recording of this mode";
+			break;
+		case ERR_END:
+			msg = "Replayed ADC " + id + " reached the end of the recording";
+			break;
+		case ERR_IO:
+			msg = "Replayed ADC " + id + " failed to read the recording";
+			break;
+		default:
+			msg = "Replayed ADC " + id + " unknown error " + errorCode;
+		}
+		strMsg.setString(0, msg);
+		return 0;
+	}
+
+	@Override
+	public int GetSoftInformation(Pointer info) {
+		info.setString(0, "USTCADC replay V1.0");
+		return 0;
+	}
+
+	private static void copy(ByteBuffer record, int position, ByteBuffer dst, int length) {
+		ByteBuffer src = record.duplicate();
+		src.limit(position + length).position(position);
+		dst.put(src);
+	}
+
+	/**
+	 * @title due
+	 * @description Get time from the start of a recording when the triggers
+	 *              before cursor were complete, interpolated in each record
+	 * @return Time in nanoseconds, 0 when pacing is AS_FAST or the recording has
+	 *         no timestamps
+	 */
+	private long due(ADCRecording recording, long cursor) {
+		long records = recording.getRecordCount();
+		if (pacing == Pacing.AS_FAST || cursor <= 0 || records < 2 || !recording.hasIndex()) {
+			return 0;
+		}
+		int trigCount = recording.getTrigCount();
+		long record = (cursor - 1) / trigCount;
+		long first = recording.getTimestamp(0);
+		long origin = first - (recording.getTimestamp(1) - first);
+		long begin = record == 0 ? origin : recording.getTimestamp(record - 1);
+		long end = recording.getTimestamp(record);
+		long triggers = (cursor - 1) % trigCount + 1;
+		return begin - origin + (end - begin) * triggers / trigCount;
+	}
+
+	private long duration(ADCRecording recording) {
+		return due(recording, recording.getTriggerTotal());
+	}
+
+	private void pace(long deadline) {
+		if (pacing == Pacing.AS_FAST) {
+			return;
+		}
+		long left;
+		while ((left = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(left);
+		}
+	}
+}
@@ -0,0 +1,416 @@
+/**
+* @project USTCADDA
+* @title ADCSimulator.java
+* @package ustcadc
+* @description A pure Java ADC backend for testing without hardware
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * @className ADCSimulator
+ * @description Simulated ADC backend. It decodes the instruction frames sent by
+ *              USTCADC, and answers RecvData with a tone of 8 bits I/Q samples
+ *              plus gaussian noise, and RecvDemo with the demod integral of the
+ *              same tone. With a trigger rate set, receiving is paced like the
+ *              real board, so throughput measured on the simulator is realistic.
+ * @date 2026.10.17
+ */
+public class ADCSimulator implements ADCBackend {
+	/**
+	 * @fields ERR_INVALID_ID : Error code of unopened ID.
+	 */
+	public static final int ERR_INVALID_ID = 1;
+	/**
+	 * @fields ERR_BAD_FRAME : Error code of undecodable instruction frame.
+	 */
+	public static final int ERR_BAD_FRAME = 2;
+	/**
+	 * @fields ERR_BAD_SIZE : Error code of zero trigger count or sample depth.
+	 */
+	public static final int ERR_BAD_SIZE = 3;
+
+	static final int NOISE_TABLE_SIZE = 1 << 16;
+
+	/**
+	 * @className Board
+	 * @description State of one simulated ADC board.
+	 */
+	static class Board {
+		byte[] srcMac = new byte[6];
+		byte[] dstMac = new byte[6];
+		int sampleDepth;
+		int trigCount;
+		int windowStart;
+		int windowWidth;
+		int demodStep;
+		int gainI;
+		int gainQ;
+		boolean isDemod;
+		long armTime;
+		Random random;
+		byte[] traceI;
+		byte[] traceQ;
+		byte[] line;
+		int templateDepth = -1;
+	}
+
+	private final Map<Integer, Board> boards = new ConcurrentHashMap<Integer, Board>();
+	private final AtomicInteger nextID = new AtomicInteger(1);
+	private final byte[] noiseTable = new byte[NOISE_TABLE_SIZE];
+	private volatile double toneFreq = 50e6;
+	private volatile double amplitude = 64;
+	private volatile double noise = 4;
+	private volatile double trigRate = 0;
+	private volatile long seed = 0;
+	private final double sampleRate = 1e9;
+
+	/**
+	 * Create a simulator with 50MHz tone, amplitude 64, noise 4 and no pacing.
+	 */
+	public ADCSimulator() {
+		buildNoiseTable();
+	}
+
+	/**
+	 * @title setToneFreq
+	 * @description Set frequency of the simulated readout tone
+	 * @param toneFreq
+	 *            Tone frequency in Hz
+	 */
+	public void setToneFreq(double toneFreq) {
+		this.toneFreq = toneFreq;
+		invalidateTemplates();
+	}
+
+	/**
+	 * @title setAmplitude
+	 * @description Set amplitude of the simulated tone
+	 * @param amplitude
+	 *            Amplitude in ADC codes, the codes are centered at 128
+	 */
+	public void setAmplitude(double amplitude) {
+		this.amplitude = amplitude;
+		invalidateTemplates();
+	}
+
+	/**
+	 * @title setNoise
+	 * @description Set standard deviation of gaussian noise
+	 * @param noise
+	 *            Noise in ADC codes
+	 */
+	public void setNoise(double noise) {
+		this.noise = noise;
+		buildNoiseTable();
+	}
+
+	/**
+	 * @title setTrigRate
+	 * @description Set trigger rate, receiving trigCount triggers then takes
+	 *              trigCount / trigRate seconds after enableADC
+	 * @param trigRate
+	 *            Trigger rate in Hz, 0 for no pacing
+	 */
+	public void setTrigRate(double trigRate) {
+		this.trigRate = trigRate;
+	}
+
+	/**
+	 * @title setSeed
+	 * @description Set random seed of boards opened after this call
+	 * @param seed
+	 *            Random seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		buildNoiseTable();
+	}
+
+	@Override
+	public int OpenADC(IntByReference pID, String srcMac, String dstMac) {
+		Board board = new Board();
+		try {
+			board.srcMac = parseMac(srcMac);
+			board.dstMac = parseMac(dstMac);
+		} catch (RuntimeException e) {
+			return ERR_BAD_FRAME;
+		}
+		int id = nextID.getAndIncrement();
+		board.random = new Random(seed + id);
+		boards.put(id, board);
+		pID.setValue(id);
+		return 0;
+	}
+
+	@Override
+	public int CloseADC(int id) {
+		return boards.remove(id) == null ? ERR_INVALID_ID : 0;
+	}
+
+	@Override
+	public int SendData(int id, int len, Pointer pData) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		byte[] data = pData.getByteArray(0, len);
+		int pos = 0;
+		while (pos < len) {
+			int size = instructionSize(data[pos], len - pos > 1 ? data[pos + 1] : -1);
+			if (size == 0 || pos + size > len) {
+				return ERR_BAD_FRAME;
+			}
+			decode(board, data, pos);
+			pos += size;
+		}
+		return 0;
+	}
+
+	@Override
+	public int RecvData(int id, int row, int column, Pointer pDataI, Pointer pDataQ) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		if (row <= 0 || column <= 0) {
+			return ERR_BAD_SIZE;
+		}
+		synchronized (board) {
+			buildTemplate(board, column);
+			for (int i = 0; i < row; i++) {
+				long offset = (long) i * column;
+				writeTrace(board, board.traceI, offset, column, pDataI);
+				writeTrace(board, board.traceQ, offset, column, pDataQ);
+			}
+		}
+		pace(board, row);
+		return 0;
+	}
+
+	@Override
+	public int RecvDemo(int id, int row, Pointer pData) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		if (row <= 0) {
+			return ERR_BAD_SIZE;
+		}
+		synchronized (board) {
+			int width = board.windowWidth;
+			double phase = 2 * Math.PI * (toneFreq - board.demodStep / 65536.0 * sampleRate) / sampleRate;
+			double sumI = 0;
+			double sumQ = 0;
+			for (int n = board.windowStart; n < board.windowStart + width; n++) {
+				sumI += amplitude * Math.cos(phase * n);
+				sumQ += amplitude * Math.sin(phase * n);
+			}
+			double sigma = noise * Math.sqrt(width);
+			for (int i = 0; i < row; i++) {
+				pData.setInt(i * 8L, (int) Math.round(sumI + sigma * board.random.nextGaussian()));
+				pData.setInt(i * 8L + 4, (int) Math.round(sumQ + sigma * board.random.nextGaussian()));
+			}
+		}
+		pace(board, row);
+		return 0;
+	}
+
+	@Override
+	public int GetMacAddress(int id, int isDst, Pointer pMac) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return ERR_INVALID_ID;
+		}
+		pMac.write(0, isDst != 0 ? board.dstMac : board.srcMac, 0, 6);
+		return 0;
+	}
+
+	@Override
+	public int GetErrorMsg(int id, int errorCode, Pointer strMsg) {
+		String msg;
+		switch (errorCode) {
+		case ERR_INVALID_ID:
+			msg = "Simulated ADC " + id + " is not open";
+			break;
+		case ERR_BAD_FRAME:
+			msg = "Simulated ADC " + id + " can not decode instruction";
+			break;
+		case ERR_BAD_SIZE:
+			msg = "Simulated ADC " + id + " got empty trigger count or sample depth";
+			break;
+		default:
+			msg = "Simulated ADC " + id + " unknown error " + errorCode;
+		}
+		strMsg.setString(0, msg);
+		return 0;
+	}
+
+	@Override
+	public int GetSoftInformation(Pointer info) {
+		info.setString(0, "USTCADC simulator V1.0");
+		return 0;
+	}
+
+	/**
+	 * @title getBoardConfig
+	 * @description Get decoded configuration of an opened board, for checking
+	 *              what USTCADC has sent
+	 * @param id
+	 *            ID of ADC
+	 * @return {sampleDepth, trigCount, windowStart, windowWidth, demodStep, gainI,
+	 *         gainQ, isDemod}, or null when not open
+	 */
+	public int[] getBoardConfig(int id) {
+		Board board = boards.get(id);
+		if (board == null) {
+			return null;
+		}
+		synchronized (board) {
+			return new int[] { board.sampleDepth, board.trigCount, board.windowStart, board.windowWidth,
+					board.demodStep, board.gainI, board.gainQ, board.isDemod ? 1 : 0 };
+		}
+	}
+
+	/**
+	 * @title instructionSize
+	 * @description Get size of the instruction started with specified opcode
+	 * @return Size in bytes, 0 for unknown instruction
+	 */
+	static int instructionSize(byte op0, int op1) {
+		if (op0 == 0 && op1 >= 18 && op1 <= 23) {
+			return 4;
+		}
+		if ((op0 == 0 && (op1 == 1 || op1 == 3 || op1 == 17)) || (op0 == 1 && op1 == 1)) {
+			return 8;
+		}
+		return 0;
+	}
+
+	private void decode(Board board, byte[] data, int pos) {
+		int value = ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+		synchronized (board) {
+			if (data[pos] == 1) {
+				board.isDemod = data[pos + 2] == 34;
+				return;
+			}
+			switch (data[pos + 1]) {
+			case 3:
+				board.armTime = System.nanoTime();
+				break;
+			case 17:
+				System.arraycopy(data, pos + 2, board.srcMac, 0, 6);
+				break;
+			case 18:
+				board.sampleDepth = value;
+				break;
+			case 19:
+				board.trigCount = value;
+				break;
+			case 20:
+				board.windowWidth = value;
+				break;
+			case 21:
+				board.windowStart = value;
+				break;
+			case 22:
+				board.demodStep = value;
+				break;
+			case 23:
+				board.gainI = data[pos + 2];
+				board.gainQ = data[pos + 3];
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private void buildTemplate(Board board, int depth) {
+		if (board.templateDepth == depth) {
+			return;
+		}
+		board.traceI = new byte[depth];
+		board.traceQ = new byte[depth];
+		board.line = new byte[depth];
+		double omega = 2 * Math.PI * toneFreq / sampleRate;
+		for (int n = 0; n < depth; n++) {
+			board.traceI[n] = (byte) clamp(128 + amplitude * Math.cos(omega * n));
+			board.traceQ[n] = (byte) clamp(128 + amplitude * Math.sin(omega * n));
+		}
+		board.templateDepth = depth;
+	}
+
+	private void writeTrace(Board board, byte[] trace, long offset, int depth, Pointer pData) {
+		byte[] line = board.line;
+		int start = board.random.nextInt(NOISE_TABLE_SIZE);
+		for (int n = 0; n < depth; n++) {
+			int v = (trace[n] & 0xff) + noiseTable[(start + n) & (NOISE_TABLE_SIZE - 1)];
+			line[n] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+		}
+		pData.write(offset, line, 0, depth);
+	}
+
+	private void pace(Board board, int row) {
+		double rate = trigRate;
+		if (rate <= 0) {
+			return;
+		}
+		long start;
+		synchronized (board) {
+			start = board.armTime == 0 ? System.nanoTime() : board.armTime;
+			board.armTime = 0;
+		}
+		long deadline = start + (long) (row / rate * 1e9);
+		long left;
+		while ((left = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(left);
+		}
+	}
+
+	private void invalidateTemplates() {
+		for (Board board : boards.values()) {
+			synchronized (board) {
+				board.templateDepth = -1;
+			}
+		}
+	}
+
+	private void buildNoiseTable() {
+		Random random = new Random(seed);
+		synchronized (noiseTable) {
+			for (int i = 0; i < NOISE_TABLE_SIZE; i++) {
+				noiseTable[i] = (byte) (clamp(noise * random.nextGaussian() + 128) - 128);
+			}
+		}
+	}
+
+	private static int clamp(double v) {
+		long r = Math.round(v);
+		return (int) (r < 0 ? 0 : (r > 255 ? 255 : r));
+	}
+
+	static byte[] parseMac(String mac) {
+		String[] parts = mac.split("[-:]");
+		if (parts.length != 6) {
+			throw new IllegalArgumentException("Bad mac address " + mac);
+		}
+		byte[] data = new byte[6];
+		for (int i = 0; i < 6; i++) {
+			data[i] = (byte) Integer.parseInt(parts[i], 16);
+		}
+		return data;
+	}
+}
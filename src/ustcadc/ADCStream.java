@@ -0,0 +1,383 @@
+/**
+* @project USTCADDA
+* @title ADCStream.java
+* @package ustcadc
+* @description Continuous acquisition of ADC into a ring of frames
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @className ADCStream
+ * @description Streaming mode of ADC. A reader thread keeps enabling the ADC and
+ *              receiving into preallocated frames of a ring, one frame per
+ *              acquisition of trigCount triggers. Any number of consumers read
+ *              the frames in place without locks or copies, each at its own
+ *              pace. In blocking mode the reader waits for the slowest consumer,
+ *              so no frame is lost but the time waited is counted as stall. In
+ *              non blocking mode the reader never waits, and frames a consumer
+ *              has not read in time are counted as its overruns.
+ * @date 2026.10.17
+ */
+public class ADCStream implements Runnable {
+	/**
+	 * @className Frame
+	 * @description One acquisition in the ring, reused by the reader thread.
+	 */
+	public static class Frame {
+		volatile long sequence = -1;
+		long timestamp;
+		final ADCRawData rawData;
+		final int[] demodI;
+		final int[] demodQ;
+
+		Frame(boolean isDemod, int trigCount, int sampleDepth) {
+			rawData = isDemod ? null : new ADCRawData(trigCount, sampleDepth);
+			demodI = isDemod ? new int[trigCount] : null;
+			demodQ = isDemod ? new int[trigCount] : null;
+		}
+
+		/**
+		 * @title getSequence
+		 * @description Get sequence number of the frame, counted from 0
+		 * @return sequence
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @title getTimestamp
+		 * @description Get System.nanoTime when the frame was received
+		 * @return timestamp
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @title getRawData
+		 * @description Get raw data, null in demod mode
+		 * @return rawData
+		 */
+		public ADCRawData getRawData() {
+			return rawData;
+		}
+
+		/**
+		 * @title getDemodI
+		 * @description Get demod data of channel I, null in raw data mode
+		 * @return demodI
+		 */
+		public int[] getDemodI() {
+			return demodI;
+		}
+
+		/**
+		 * @title getDemodQ
+		 * @description Get demod data of channel Q, null in raw data mode
+		 * @return demodQ
+		 */
+		public int[] getDemodQ() {
+			return demodQ;
+		}
+	}
+
+	/**
+	 * @className Consumer
+	 * @description A reader of the ring. The frame returned by next is kept from
+	 *              the reader thread until next is called again or the consumer
+	 *              is closed. A consumer must be used by one thread.
+	 */
+	public class Consumer {
+		private long cursor;
+		private long current = -1;
+		private volatile long released;
+		private long overruns;
+		private long maxLag;
+
+		Consumer(long start) {
+			this.cursor = start;
+			this.released = start;
+		}
+
+		/**
+		 * @title next
+		 * @description Release the previous frame and wait for the next one
+		 * @param timeout
+		 *            The unit is nanosecond
+		 * @return The next frame, null on timeout or when the stream has stopped
+		 *         and all frames are read
+		 * @throws Exception
+		 *             Throw the exception that stopped the reader thread
+		 */
+		public Frame next(long timeout) throws Exception {
+			released = cursor;
+			long deadline = System.nanoTime() + timeout;
+			int spins = 0;
+			while (published.get() <= cursor) {
+				if (!isRunning) {
+					if (error != null) {
+						throw error;
+					}
+					if (published.get() <= cursor) {
+						return null;
+					}
+					break;
+				}
+				if (System.nanoTime() - deadline >= 0) {
+					return null;
+				}
+				spins = idle(spins);
+			}
+			long head = published.get();
+			// Frame head - capacity shares its slot with the frame the reader
+			// may be receiving, so skip it too.
+			if (!isBlocking && head - cursor >= capacity) {
+				overruns += head - capacity + 1 - cursor;
+				cursor = head - capacity + 1;
+			}
+			if (head - cursor > maxLag) {
+				maxLag = head - cursor;
+			}
+			current = cursor;
+			cursor++;
+			return frames[(int) (current % capacity)];
+		}
+
+		/**
+		 * @title isIntact
+		 * @description Check whether the last frame returned by next has not been
+		 *              overwritten, always true in blocking mode. Check it after
+		 *              reading a frame in non blocking mode.
+		 * @return True if the frame read is intact
+		 */
+		public boolean isIntact() {
+			return current >= 0 && claimed.get() < current + capacity;
+		}
+
+		/**
+		 * @title getLag
+		 * @description Get count of frames published and not read yet
+		 * @return lag
+		 */
+		public long getLag() {
+			return published.get() - cursor;
+		}
+
+		/**
+		 * @title getMaxLag
+		 * @description Get the largest lag seen by next
+		 * @return maxLag
+		 */
+		public long getMaxLag() {
+			return maxLag;
+		}
+
+		/**
+		 * @title getOverruns
+		 * @description Get count of frames overwritten before being read, always
+		 *              0 in blocking mode
+		 * @return overruns
+		 */
+		public long getOverruns() {
+			return overruns;
+		}
+
+		/**
+		 * @title close
+		 * @description Stop gating the reader thread
+		 */
+		public void close() {
+			removeConsumer(this);
+		}
+	}
+
+	private final USTCADC adc;
+	private final int capacity;
+	private final boolean isBlocking;
+	private final Frame[] frames;
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong claimed = new AtomicLong(-1);
+	private volatile Consumer[] consumers = new Consumer[0];
+	private volatile boolean isRunning;
+	private volatile Exception error;
+	private volatile long stallTime;
+	private Thread thread;
+
+	/**
+	 * Create a stream on an opened and configured ADC, frames are sized by its
+	 * current trigCount, sampleDepth and demod mode.
+	 *
+	 * @param adc
+	 *            The ADC
+	 * @param capacity
+	 *            Count of frames in the ring
+	 * @param isBlocking
+	 *            True for waiting for the slowest consumer, false for overwriting
+	 */
+	public ADCStream(USTCADC adc, int capacity, boolean isBlocking) {
+		this.adc = adc;
+		this.capacity = capacity;
+		this.isBlocking = isBlocking;
+		this.frames = new Frame[capacity];
+		for (int i = 0; i < capacity; i++) {
+			frames[i] = new Frame(adc.getDemodMode(), adc.getTrigCount(), adc.getSampleDepth());
+		}
+	}
+
+	/**
+	 * @title start
+	 * @description Start the reader thread
+	 */
+	public synchronized void start() {
+		if (thread == null) {
+			isRunning = true;
+			thread = new Thread(this, "ADCStream-" + adc.getMacAddr(true));
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * @title stop
+	 * @description Stop the reader thread after the acquisition in progress
+	 * @throws InterruptedException
+	 *             Throw exception when interrupted while waiting
+	 */
+	public synchronized void stop() throws InterruptedException {
+		isRunning = false;
+		if (thread != null) {
+			thread.join();
+			thread = null;
+		}
+	}
+
+	/**
+	 * @title newConsumer
+	 * @description Create a consumer starting at the next frame to be published
+	 * @return The consumer
+	 */
+	public synchronized Consumer newConsumer() {
+		Consumer consumer = new Consumer(published.get());
+		Consumer[] list = new Consumer[consumers.length + 1];
+		System.arraycopy(consumers, 0, list, 0, consumers.length);
+		list[consumers.length] = consumer;
+		consumers = list;
+		return consumer;
+	}
+
+	private synchronized void removeConsumer(Consumer consumer) {
+		Consumer[] list = consumers;
+		for (int i = 0; i < list.length; i++) {
+			if (list[i] == consumer) {
+				Consumer[] rest = new Consumer[list.length - 1];
+				System.arraycopy(list, 0, rest, 0, i);
+				System.arraycopy(list, i + 1, rest, i, list.length - i - 1);
+				consumers = rest;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @title getPublished
+	 * @description Get count of frames published
+	 * @return published
+	 */
+	public long getPublished() {
+		return published.get();
+	}
+
+	/**
+	 * @title getStallTime
+	 * @description Get time the reader thread waited for consumers in blocking
+	 *              mode, the ADC is not enabled meanwhile, so triggers arriving in
+	 *              this time are not acquired
+	 * @return The unit is nanosecond
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	/**
+	 * @title getError
+	 * @description Get the exception that stopped the reader thread
+	 * @return error, null if none
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (isRunning) {
+				long sequence = published.get();
+				if (isBlocking && !waitConsumers(sequence)) {
+					break;
+				}
+				Frame frame = frames[(int) (sequence % capacity)];
+				claimed.set(sequence);
+				adc.enableADC();
+				if (frame.rawData != null) {
+					adc.recvDataInto(frame.rawData);
+				} else {
+					adc.recvDemoInto(frame.demodI, frame.demodQ);
+				}
+				frame.timestamp = System.nanoTime();
+				frame.sequence = sequence;
+				published.set(sequence + 1);
+			}
+		} catch (Exception e) {
+			error = e;
+		} finally {
+			isRunning = false;
+		}
+	}
+
+	private boolean waitConsumers(long sequence) {
+		long start = 0;
+		int spins = 0;
+		while (sequence - minReleased() >= capacity) {
+			if (!isRunning) {
+				return false;
+			}
+			if (start == 0) {
+				start = System.nanoTime();
+			}
+			spins = idle(spins);
+		}
+		if (start != 0) {
+			stallTime += System.nanoTime() - start;
+		}
+		return true;
+	}
+
+	private long minReleased() {
+		Consumer[] list = consumers;
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < list.length; i++) {
+			long released = list[i].released;
+			if (released < min) {
+				min = released;
+			}
+		}
+		return min == Long.MAX_VALUE ? published.get() : min;
+	}
+
+	private static int idle(int spins) {
+		if (spins < 100) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(20000);
+		}
+		return spins + 1;
+	}
+}
@@ -0,0 +1,89 @@
+/**
+* @project USTCADDA
+* @title CentroidClassifier.java
+* @package ustcadc
+* @description Nearest centroid classifier
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+/**
+ * @className CentroidClassifier
+ * @description The state is the one whose centroid is nearest to the point.
+ * @date 2026.10.17
+ */
+public class CentroidClassifier extends IQClassifier {
+	private final double[] centerI;
+	private final double[] centerQ;
+
+	/**
+	 * Create a nearest centroid classifier.
+	 *
+	 * @param centerI
+	 *            I of each state's centroid
+	 * @param centerQ
+	 *            Q of each state's centroid
+	 */
+	public CentroidClassifier(double[] centerI, double[] centerQ) {
+		if (centerI.length != centerQ.length || centerI.length == 0) {
+			throw new IllegalArgumentException("Centroids are empty or of different lengths");
+		}
+		this.centerI = centerI.clone();
+		this.centerQ = centerQ.clone();
+	}
+
+	/**
+	 * @title fit
+	 * @description Fit from calibration shots, one array per prepared state
+	 * @param calibI
+	 *            Demod I of shots prepared in each state
+	 * @param calibQ
+	 *            Demod Q of shots prepared in each state
+	 * @return The classifier
+	 */
+	public static CentroidClassifier fit(int[][] calibI, int[][] calibQ) {
+		double[] centerI = new double[calibI.length];
+		double[] centerQ = new double[calibI.length];
+		for (int s = 0; s < calibI.length; s++) {
+			double[] c = centroid(calibI[s], calibQ[s]);
+			centerI[s] = c[0];
+			centerQ[s] = c[1];
+		}
+		return new CentroidClassifier(centerI, centerQ);
+	}
+
+	@Override
+	public int getStateCount() {
+		return centerI.length;
+	}
+
+	@Override
+	public int classify(double i, double q) {
+		int best = 0;
+		double bestDistance = Double.MAX_VALUE;
+		for (int s = 0; s < centerI.length; s++) {
+			double di = i - centerI[s];
+			double dq = q - centerQ[s];
+			double distance = di * di + dq * dq;
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @title getCenter
+	 * @description Get centroid of a state
+	 * @param state
+	 *            The state
+	 * @return {I, Q}
+	 */
+	public double[] getCenter(int state) {
+		return new double[] { centerI[state], centerQ[state] };
+	}
+}
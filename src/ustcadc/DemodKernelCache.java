@@ -0,0 +1,138 @@
+/**
+* @project USTCADDA
+* @title DemodKernelCache.java
+* @package ustcadc
+* @description Cache of demod sin/cos kernels keyed by DDS step and window
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import ustcadda.OffHeapCache;
+
+/**
+ * @className DemodKernelCache
+ * @description Demod kernels as the ADC's DDS makes them. The frequency is
+ *              quantized to a 16 bits step as setDemodFreq does, and the phase
+ *              of sample n is (step * n) mod 65536 of a turn, so software demod
+ *              matches the hardware. A kernel holds width cos values then width
+ *              sin values, fixed point scaled by ADCDemodulator.KERNEL_SCALE, and
+ *              is kept off heap in a bounded LRU cache.
+ * @date 2026.10.17
+ */
+public class DemodKernelCache {
+	/**
+	 * @className Key
+	 * @description Key of a kernel.
+	 */
+	static final class Key {
+		final int step;
+		final int windowStart;
+		final int windowWidth;
+		final int sampleDepth;
+
+		Key(int step, int windowStart, int windowWidth, int sampleDepth) {
+			this.step = step;
+			this.windowStart = windowStart;
+			this.windowWidth = windowWidth;
+			this.sampleDepth = sampleDepth;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return step == key.step && windowStart == key.windowStart && windowWidth == key.windowWidth
+					&& sampleDepth == key.sampleDepth;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((step * 31 + windowStart) * 31 + windowWidth) * 31 + sampleDepth;
+		}
+	}
+
+	private static final DemodKernelCache SHARED = new DemodKernelCache(64L << 20);
+
+	private static final OffHeapCache.Builder<Key> BUILDER = new OffHeapCache.Builder<Key>() {
+		@Override
+		public void build(Key key, ByteBuffer buffer) {
+			IntBuffer kernel = buffer.asIntBuffer();
+			int width = key.windowWidth;
+			for (int n = 0; n < width; n++) {
+				int phase = (key.step * (key.windowStart + n)) & 0xffff;
+				double angle = 2 * Math.PI * phase / 65536.0;
+				kernel.put(n, (int) Math.round(ADCDemodulator.KERNEL_SCALE * Math.cos(angle)));
+				kernel.put(width + n, (int) Math.round(ADCDemodulator.KERNEL_SCALE * Math.sin(angle)));
+			}
+		}
+	};
+
+	private final OffHeapCache<Key> cache;
+
+	/**
+	 * Create a kernel cache.
+	 *
+	 * @param maxBytes
+	 *            Maximum total bytes of cached kernels
+	 */
+	public DemodKernelCache(long maxBytes) {
+		this.cache = new OffHeapCache<Key>(maxBytes);
+	}
+
+	/**
+	 * @title shared
+	 * @description Get the cache shared by all demodulators, 64MB at most
+	 * @return The shared cache
+	 */
+	public static DemodKernelCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @title ddsStep
+	 * @description Quantize demod frequency to the DDS step sent by setDemodFreq
+	 * @param demodFreq
+	 *            Demod frequency in Hz
+	 * @param sampleRate
+	 *            Sample rate of ADC
+	 * @return The 16 bits step
+	 */
+	public static int ddsStep(double demodFreq, double sampleRate) {
+		return ((int) (demodFreq / sampleRate * 65536)) & 0xffff;
+	}
+
+	/**
+	 * @title getKernel
+	 * @description Get the kernel of a DDS step and window
+	 * @param step
+	 *            The 16 bits DDS step
+	 * @param windowStart
+	 *            Window start
+	 * @param windowWidth
+	 *            Window width
+	 * @param sampleDepth
+	 *            Sample depth
+	 * @return Read only view, windowWidth cos values then windowWidth sin values
+	 */
+	public IntBuffer getKernel(int step, int windowStart, int windowWidth, int sampleDepth) {
+		Key key = new Key(step & 0xffff, windowStart, windowWidth, sampleDepth);
+		return cache.get(key, 8 * windowWidth, BUILDER).asIntBuffer();
+	}
+
+	/**
+	 * @title getCache
+	 * @description Get the underlying cache for its statistics
+	 * @return cache
+	 */
+	public OffHeapCache<?> getCache() {
+		return cache;
+	}
+}
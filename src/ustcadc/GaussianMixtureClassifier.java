@@ -0,0 +1,263 @@
+/**
+* @project USTCADDA
+* @title GaussianMixtureClassifier.java
+* @package ustcadc
+* @description Gaussian mixture classifier
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+/**
+ * @className GaussianMixtureClassifier
+ * @description Each state is a 2D gaussian with full covariance and a weight,
+ *              the state of a point is the one of largest weighted likelihood.
+ *              It is fitted from labeled calibration shots, and can be refined
+ *              by EM on unlabeled shots.
+ * @date 2026.10.17
+ */
+public class GaussianMixtureClassifier extends IQClassifier {
+	/**
+	 * @fields QUANTIZATION : Variance of rounding demod data to integers, the
+	 *         least variance of a state
+	 */
+	static final double QUANTIZATION = 1.0 / 12;
+	/**
+	 * @fields RELATIVE_FLOOR : Fraction of the variance of a state added to it
+	 *         to keep the covariance positive definite
+	 */
+	static final double RELATIVE_FLOOR = 1e-6;
+
+	private final double[] meanI;
+	private final double[] meanQ;
+	private final double[] varI;
+	private final double[] varQ;
+	private final double[] covIQ;
+	private final double[] weight;
+	private final double[] invII;
+	private final double[] invIQ;
+	private final double[] invQQ;
+	private final double[] logNorm;
+
+	/**
+	 * Create a gaussian mixture classifier.
+	 *
+	 * @param meanI
+	 *            I mean of each state
+	 * @param meanQ
+	 *            Q mean of each state
+	 * @param varI
+	 *            I variance of each state
+	 * @param varQ
+	 *            Q variance of each state
+	 * @param covIQ
+	 *            I/Q covariance of each state
+	 * @param weight
+	 *            Weight of each state
+	 */
+	public GaussianMixtureClassifier(double[] meanI, double[] meanQ, double[] varI, double[] varQ, double[] covIQ,
+			double[] weight) {
+		int states = meanI.length;
+		if (states == 0 || meanQ.length != states || varI.length != states || varQ.length != states
+				|| covIQ.length != states || weight.length != states) {
+			throw new IllegalArgumentException("Mixture parameters are empty or of different lengths");
+		}
+		this.meanI = meanI.clone();
+		this.meanQ = meanQ.clone();
+		this.varI = varI.clone();
+		this.varQ = varQ.clone();
+		this.covIQ = covIQ.clone();
+		this.weight = weight.clone();
+		this.invII = new double[states];
+		this.invIQ = new double[states];
+		this.invQQ = new double[states];
+		this.logNorm = new double[states];
+		for (int s = 0; s < states; s++) {
+			double det = varI[s] * varQ[s] - covIQ[s] * covIQ[s];
+			if (!(det > 0)) {
+				throw new IllegalArgumentException("Covariance of state " + s + " is not positive definite");
+			}
+			invII[s] = varQ[s] / det;
+			invIQ[s] = -covIQ[s] / det;
+			invQQ[s] = varI[s] / det;
+			logNorm[s] = Math.log(weight[s]) - 0.5 * Math.log(det);
+		}
+	}
+
+	/**
+	 * @title fit
+	 * @description Fit from calibration shots, one array per prepared state, the
+	 *              weights are equal
+	 * @param calibI
+	 *            Demod I of shots prepared in each state
+	 * @param calibQ
+	 *            Demod Q of shots prepared in each state
+	 * @return The classifier
+	 */
+	public static GaussianMixtureClassifier fit(int[][] calibI, int[][] calibQ) {
+		int states = calibI.length;
+		double[] meanI = new double[states];
+		double[] meanQ = new double[states];
+		double[] varI = new double[states];
+		double[] varQ = new double[states];
+		double[] covIQ = new double[states];
+		double[] weight = new double[states];
+		for (int s = 0; s < states; s++) {
+			double[] c = centroid(calibI[s], calibQ[s]);
+			meanI[s] = c[0];
+			meanQ[s] = c[1];
+			int n = calibI[s].length;
+			for (int k = 0; k < n; k++) {
+				double di = calibI[s][k] - c[0];
+				double dq = calibQ[s][k] - c[1];
+				varI[s] += di * di;
+				varQ[s] += dq * dq;
+				covIQ[s] += di * dq;
+			}
+			varI[s] /= n;
+			varQ[s] /= n;
+			covIQ[s] /= n;
+			regularize(varI, varQ, s);
+			weight[s] = 1.0 / states;
+		}
+		return new GaussianMixtureClassifier(meanI, meanQ, varI, varQ, covIQ, weight);
+	}
+
+	/**
+	 * @title refine
+	 * @description Refine the mixture by EM on unlabeled shots
+	 * @param dataI
+	 *            Demod I
+	 * @param dataQ
+	 *            Demod Q
+	 * @param count
+	 *            Count of shots
+	 * @param iterations
+	 *            Count of EM iterations
+	 * @return The refined classifier
+	 */
+	public GaussianMixtureClassifier refine(int[] dataI, int[] dataQ, int count, int iterations) {
+		GaussianMixtureClassifier model = this;
+		int states = getStateCount();
+		double[] score = new double[states];
+		for (int it = 0; it < iterations; it++) {
+			// Weighted Welford updates, sums of squares of raw demod values
+			// around 1e5~1e6 would cancel in E[x^2] - mean^2.
+			double[] n = new double[states];
+			double[] meanI = new double[states];
+			double[] meanQ = new double[states];
+			double[] mii = new double[states];
+			double[] mqq = new double[states];
+			double[] miq = new double[states];
+			for (int k = 0; k < count; k++) {
+				double i = dataI[k];
+				double q = dataQ[k];
+				double max = Double.NEGATIVE_INFINITY;
+				for (int s = 0; s < states; s++) {
+					score[s] = model.logLikelihood(s, i, q);
+					max = Math.max(max, score[s]);
+				}
+				double total = 0;
+				for (int s = 0; s < states; s++) {
+					score[s] = Math.exp(score[s] - max);
+					total += score[s];
+				}
+				for (int s = 0; s < states; s++) {
+					double r = score[s] / total;
+					if (r == 0) {
+						continue;
+					}
+					n[s] += r;
+					double di = i - meanI[s];
+					double dq = q - meanQ[s];
+					meanI[s] += r / n[s] * di;
+					meanQ[s] += r / n[s] * dq;
+					mii[s] += r * di * (i - meanI[s]);
+					mqq[s] += r * dq * (q - meanQ[s]);
+					miq[s] += r * di * (q - meanQ[s]);
+				}
+			}
+			double[] varI = new double[states];
+			double[] varQ = new double[states];
+			double[] covIQ = new double[states];
+			double[] weight = new double[states];
+			for (int s = 0; s < states; s++) {
+				if (n[s] < 1e-9) {
+					return model;
+				}
+				varI[s] = mii[s] / n[s];
+				varQ[s] = mqq[s] / n[s];
+				covIQ[s] = miq[s] / n[s];
+				regularize(varI, varQ, s);
+				weight[s] = n[s] / count;
+			}
+			model = new GaussianMixtureClassifier(meanI, meanQ, varI, varQ, covIQ, weight);
+		}
+		return model;
+	}
+
+	/**
+	 * @title regularize
+	 * @description Add a floor scaled to the variances of a state to both, so
+	 *              its covariance stays positive definite
+	 */
+	private static void regularize(double[] varI, double[] varQ, int s) {
+		double floor = Math.max(QUANTIZATION, RELATIVE_FLOOR * (varI[s] + varQ[s]) / 2);
+		varI[s] += floor;
+		varQ[s] += floor;
+	}
+
+	@Override
+	public int getStateCount() {
+		return meanI.length;
+	}
+
+	@Override
+	public int classify(double i, double q) {
+		int best = 0;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int s = 0; s < meanI.length; s++) {
+			double score = logLikelihood(s, i, q);
+			if (score > bestScore) {
+				bestScore = score;
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @title logLikelihood
+	 * @description Get log of weighted likelihood of a state, without the
+	 *              constant -log(2 * pi)
+	 */
+	double logLikelihood(int s, double i, double q) {
+		double di = i - meanI[s];
+		double dq = q - meanQ[s];
+		return logNorm[s] - 0.5 * (di * di * invII[s] + 2 * di * dq * invIQ[s] + dq * dq * invQQ[s]);
+	}
+
+	/**
+	 * @title getMean
+	 * @description Get mean of a state
+	 * @param state
+	 *            The state
+	 * @return {I, Q}
+	 */
+	public double[] getMean(int state) {
+		return new double[] { meanI[state], meanQ[state] };
+	}
+
+	/**
+	 * @title getWeight
+	 * @description Get weight of a state
+	 * @param state
+	 *            The state
+	 * @return Weight
+	 */
+	public double getWeight(int state) {
+		return weight[state];
+	}
+}
@@ -0,0 +1,143 @@
+/**
+* @project USTCADDA
+* @title IQClassifier.java
+* @package ustcadc
+* @description Single shot state classifier of demod I/Q points
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+/**
+ * @className IQClassifier
+ * @description Classify demod I/Q points, as returned by recvDemoInto, into
+ *              states 0 ~ stateCount - 1. Results are written as one byte per
+ *              shot or packed bits, getBitsPerState bits per shot from the low
+ *              bits of each long, and the count of each state is added up. No
+ *              object is created per shot.
+ * @date 2026.10.17
+ */
+public abstract class IQClassifier {
+	/**
+	 * @title getStateCount
+	 * @description Get count of states
+	 * @return State count
+	 */
+	public abstract int getStateCount();
+
+	/**
+	 * @title classify
+	 * @description Classify one point
+	 * @param i
+	 *            Demod I
+	 * @param q
+	 *            Demod Q
+	 * @return The state
+	 */
+	public abstract int classify(double i, double q);
+
+	/**
+	 * @title getBitsPerState
+	 * @description Get bits of each shot in packed output, 1, 2, 4 or 8
+	 * @return Bits per state
+	 */
+	public int getBitsPerState() {
+		int states = getStateCount();
+		return states <= 2 ? 1 : (states <= 4 ? 2 : (states <= 16 ? 4 : 8));
+	}
+
+	/**
+	 * @title classify
+	 * @description Classify count points, one byte per shot
+	 * @param dataI
+	 *            Demod I
+	 * @param dataQ
+	 *            Demod Q
+	 * @param count
+	 *            Count of shots
+	 * @param states
+	 *            Receive the state of each shot, at least count
+	 * @param counts
+	 *            Count of each state is added here, at least stateCount, may be
+	 *            null
+	 */
+	public void classify(int[] dataI, int[] dataQ, int count, byte[] states, long[] counts) {
+		for (int k = 0; k < count; k++) {
+			int state = classify(dataI[k], dataQ[k]);
+			states[k] = (byte) state;
+			if (counts != null) {
+				counts[state]++;
+			}
+		}
+	}
+
+	/**
+	 * @title classifyPacked
+	 * @description Classify count points into packed bits, shot k takes bits
+	 *              [k * b, k * b + b) of the long array, b = getBitsPerState
+	 * @param dataI
+	 *            Demod I
+	 * @param dataQ
+	 *            Demod Q
+	 * @param count
+	 *            Count of shots
+	 * @param bits
+	 *            Receive the packed states, at least ceil(count * b / 64)
+	 * @param counts
+	 *            Count of each state is added here, at least stateCount, may be
+	 *            null
+	 */
+	public void classifyPacked(int[] dataI, int[] dataQ, int count, long[] bits, long[] counts) {
+		int width = getBitsPerState();
+		int perWord = 64 / width;
+		for (int w = 0, k = 0; k < count; w++) {
+			long word = 0;
+			int end = Math.min(count, k + perWord);
+			for (int shift = 0; k < end; k++, shift += width) {
+				int state = classify(dataI[k], dataQ[k]);
+				word |= (long) state << shift;
+				if (counts != null) {
+					counts[state]++;
+				}
+			}
+			bits[w] = word;
+		}
+	}
+
+	/**
+	 * @title getPacked
+	 * @description Get state of one shot from packed bits
+	 * @param bits
+	 *            The packed states
+	 * @param shot
+	 *            Shot index
+	 * @param bitsPerState
+	 *            Bits per state of the packed states
+	 * @return The state
+	 */
+	public static int getPacked(long[] bits, int shot, int bitsPerState) {
+		int perWord = 64 / bitsPerState;
+		int shift = (shot % perWord) * bitsPerState;
+		return (int) ((bits[shot / perWord] >>> shift) & ((1L << bitsPerState) - 1));
+	}
+
+	/**
+	 * @title centroid
+	 * @description Get mean of calibration shots
+	 * @return {mean I, mean Q}
+	 */
+	static double[] centroid(int[] calibI, int[] calibQ) {
+		if (calibI.length == 0 || calibI.length != calibQ.length) {
+			throw new IllegalArgumentException("Calibration shots are empty or of different lengths");
+		}
+		double sumI = 0;
+		double sumQ = 0;
+		for (int k = 0; k < calibI.length; k++) {
+			sumI += calibI[k];
+			sumQ += calibQ[k];
+		}
+		return new double[] { sumI / calibI.length, sumQ / calibI.length };
+	}
+}
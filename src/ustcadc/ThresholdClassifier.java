@@ -0,0 +1,112 @@
+/**
+* @project USTCADDA
+* @title ThresholdClassifier.java
+* @package ustcadc
+* @description Linear threshold classifier of two states
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadc;
+
+/**
+ * @className ThresholdClassifier
+ * @description State 1 when axisI * i + axisQ * q > threshold, else state 0.
+ * @date 2026.10.17
+ */
+public class ThresholdClassifier extends IQClassifier {
+	private final double axisI;
+	private final double axisQ;
+	private final double threshold;
+
+	/**
+	 * Create a threshold classifier.
+	 *
+	 * @param axisI
+	 *            I component of the projection axis
+	 * @param axisQ
+	 *            Q component of the projection axis
+	 * @param threshold
+	 *            Threshold of the projection
+	 */
+	public ThresholdClassifier(double axisI, double axisQ, double threshold) {
+		this.axisI = axisI;
+		this.axisQ = axisQ;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @title fit
+	 * @description Fit from calibration shots of the two states, the axis joins
+	 *              the two centroids and the threshold is at their middle
+	 * @param calibI
+	 *            Demod I of shots prepared in state 0 and state 1
+	 * @param calibQ
+	 *            Demod Q of shots prepared in state 0 and state 1
+	 * @return The classifier
+	 */
+	public static ThresholdClassifier fit(int[][] calibI, int[][] calibQ) {
+		if (calibI.length != 2 || calibQ.length != 2) {
+			throw new IllegalArgumentException("Threshold classifier has two states");
+		}
+		double[] c0 = centroid(calibI[0], calibQ[0]);
+		double[] c1 = centroid(calibI[1], calibQ[1]);
+		double axisI = c1[0] - c0[0];
+		double axisQ = c1[1] - c0[1];
+		double threshold = (axisI * (c0[0] + c1[0]) + axisQ * (c0[1] + c1[1])) / 2;
+		return new ThresholdClassifier(axisI, axisQ, threshold);
+	}
+
+	@Override
+	public int getStateCount() {
+		return 2;
+	}
+
+	@Override
+	public int classify(double i, double q) {
+		return axisI * i + axisQ * q > threshold ? 1 : 0;
+	}
+
+	@Override
+	public void classify(int[] dataI, int[] dataQ, int count, byte[] states, long[] counts) {
+		long ones = 0;
+		for (int k = 0; k < count; k++) {
+			int state = axisI * dataI[k] + axisQ * dataQ[k] > threshold ? 1 : 0;
+			states[k] = (byte) state;
+			ones += state;
+		}
+		if (counts != null) {
+			counts[0] += count - ones;
+			counts[1] += ones;
+		}
+	}
+
+	@Override
+	public void classifyPacked(int[] dataI, int[] dataQ, int count, long[] bits, long[] counts) {
+		long ones = 0;
+		for (int w = 0, k = 0; k < count; w++) {
+			long word = 0;
+			int end = Math.min(count, k + 64);
+			for (int shift = 0; k < end; k++, shift++) {
+				long state = axisI * dataI[k] + axisQ * dataQ[k] > threshold ? 1 : 0;
+				word |= state << shift;
+			}
+			bits[w] = word;
+			ones += Long.bitCount(word);
+		}
+		if (counts != null) {
+			counts[0] += count - ones;
+			counts[1] += ones;
+		}
+	}
+
+	/**
+	 * @title getThreshold
+	 * @description Get threshold of the projection
+	 * @return threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+}
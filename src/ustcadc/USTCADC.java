@@ -11,10 +11,14 @@
 
 package ustcadc;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
-import ustcadc.CADCLib;
+import ustcadda.NativeBufferPool;
 
 /**
  * @className USTCADC
@@ -58,6 +62,22 @@ public class USTCADC {
 	 * @fields isDemod : The demod state of the ADC, true for demod mode.
 	 */
 	private boolean isDemod;
+	/**
+	 * @fields gainI, gainQ : The channel gains of the ADC.
+	 */
+	private byte gainI, gainQ;
+	/**
+	 * @fields applied : The config last applied, null when the board state is
+	 *         unknown.
+	 */
+	private ADCConfig applied;
+	/**
+	 * @fields isCoalesceFrames : Whether apply packs its instructions in one
+	 *         frame.
+	 */
+	private boolean isCoalesceFrames = false;
+	private long applyLatency;
+	private long applies, sentCount, skippedCount, frameCount;
 	/**
 	 * @fields srcMac : The MAC address of PC.
 	 */
@@ -66,6 +86,19 @@ public class USTCADC {
 	 * @fields dstMac : The MAC address of ADC.
 	 */
 	private String dstMac;
+	/**
+	 * @fields backend : The driver behind this ADC.
+	 */
+	private final ADCBackend backend;
+	/**
+	 * @fields stageI, stageQ, stageIQ : Staging memory of receiving, kept
+	 *         across calls, so USTCADC should be used by one thread at a time.
+	 */
+	private Memory stageI, stageQ, stageIQ;
+	private int[] demodStage = new int[0];
+	private final ByteBuffer[] directBuffers = new ByteBuffer[3];
+	private final int[] directPositions = new int[3];
+	private final Pointer[] directPointers = new Pointer[3];
 	/**
 	 * @fields channelAmount : The channel amount of ADC.
 	 */
@@ -96,8 +129,23 @@ public class USTCADC {
 	 *            Destination mac address of PC
 	 */
 	public USTCADC(String srcMac, String dstMac) {
+		this(srcMac, dstMac, CADCLib.INSTANCE);
+	}
+
+	/**
+	 * Create new instance of USTCADC on specified backend.
+	 * 
+	 * @param srcMac
+	 *            Source mac address of PC
+	 * @param dstMac
+	 *            Destination mac address of PC
+	 * @param backend
+	 *            The driver backend, for example an ADCSimulator
+	 */
+	public USTCADC(String srcMac, String dstMac, ADCBackend backend) {
 		this.srcMac = srcMac;
 		this.dstMac = dstMac;
+		this.backend = backend;
 		this.isOpen = false;
 		this.id = -1;
 	}
@@ -109,11 +157,12 @@ public class USTCADC {
 	public void openADC() {
 		if (!isOpen) {
 			IntByReference pID = new IntByReference();
-			int code = CADCLib.INSTANCE.OpenADC(pID, srcMac, dstMac);
+			int code = backend.OpenADC(pID, srcMac, dstMac);
 			id = pID.getValue();
-			USTCADC.checkReturn(id, code);
+			USTCADC.checkReturn(backend, id, code);
 			setADCDstMacAddr();
 			isOpen = true;
+			applied = null;
 		}
 	}
 
@@ -123,8 +172,8 @@ public class USTCADC {
 	 */
 	public void closeADC() {
 		if (isOpen) {
-			int code = CADCLib.INSTANCE.CloseADC(id);
-			USTCADC.checkReturn(id, code);
+			int code = backend.CloseADC(id);
+			USTCADC.checkReturn(backend, id, code);
 			id = 0;
 			isOpen = false;
 		}
@@ -138,23 +187,110 @@ public class USTCADC {
 	 *             Throw exception when receive data failed
 	 */
 	public short[][][] recvData() throws Exception {
-		Pointer pDataI = new Memory(sampleDepth * trigCount);
-		Pointer pDataQ = new Memory(sampleDepth * trigCount);
-		int code = CADCLib.INSTANCE.RecvData(id, trigCount, sampleDepth, pDataI, pDataQ);
-		if (code != 0) {
-			Pointer errordata = new Memory(1024);
-			CADCLib.INSTANCE.GetErrorMsg(id, code, errordata);
-			String errormsg = errordata.getString(0L);
-			throw new Exception(errormsg);
+		return recvRawData().toShortArray();
+	}
+
+	/**
+	 * @title recvRawData
+	 * @description Recieve raw data of ADC in flat layout, each channel is copied
+	 *              from the driver in one bulk read
+	 * @return Raw data with trigCount * sampleDepth unsigned bytes per channel
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public ADCRawData recvRawData() throws Exception {
+		ADCRawData data = new ADCRawData(trigCount, sampleDepth);
+		recvDataInto(data.getChannel(0), data.getChannel(1));
+		return data;
+	}
+
+	/**
+	 * @title recvDataInto
+	 * @description Recieve raw data of ADC into reusable raw data, nothing is
+	 *              allocated once the staging memory has grown
+	 * @param data
+	 *            Raw data with the current trigCount and sampleDepth
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDataInto(ADCRawData data) throws Exception {
+		if (data.getTrigCount() != trigCount || data.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Raw data size does not match trigCount and sampleDepth");
 		}
-		short data[][][] = new short[2][trigCount][sampleDepth];
-		for (int i = 0; i < trigCount; i++) {
-			for (int j = 0; j < sampleDepth; j++) {
-				data[0][i][j] = (short) (pDataI.getByte(i * sampleDepth + j) & 0x00ff);
-				data[1][i][j] = (short) (pDataQ.getByte(i * sampleDepth + j) & 0x00ff);
-			}
+		recvDataInto(data.getChannel(0), data.getChannel(1));
+	}
+
+	/**
+	 * @title recvDataInto
+	 * @description Recieve raw data of ADC into caller's arrays, sample j of
+	 *              trigger i is at index i * sampleDepth + j
+	 * @param dataI
+	 *            Channel I array, at least trigCount * sampleDepth
+	 * @param dataQ
+	 *            Channel Q array, at least trigCount * sampleDepth
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDataInto(byte[] dataI, byte[] dataQ) throws Exception {
+		int length = sampleDepth * trigCount;
+		if (dataI.length < length || dataQ.length < length) {
+			throw new IllegalArgumentException("Array is shorter than trigCount * sampleDepth");
 		}
-		return data;
+		stageI = stage(stageI, length);
+		stageQ = stage(stageQ, length);
+		int code = backend.RecvData(id, trigCount, sampleDepth, stageI, stageQ);
+		checkRecv(code);
+		stageI.read(0, dataI, 0, length);
+		stageQ.read(0, dataQ, 0, length);
+	}
+
+	/**
+	 * @title recvDataInto
+	 * @description Recieve raw data of ADC into caller's buffers from their
+	 *              position, positions are not changed. Direct buffers are
+	 *              handed to the driver as they are, without staging copy.
+	 * @param dataI
+	 *            Channel I buffer, at least trigCount * sampleDepth remaining
+	 * @param dataQ
+	 *            Channel Q buffer, at least trigCount * sampleDepth remaining
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDataInto(ByteBuffer dataI, ByteBuffer dataQ) throws Exception {
+		int length = sampleDepth * trigCount;
+		if (dataI.remaining() < length || dataQ.remaining() < length) {
+			throw new IllegalArgumentException("Buffer remaining is shorter than trigCount * sampleDepth");
+		}
+		if (dataI.isDirect() && dataQ.isDirect()) {
+			int code = backend.RecvData(id, trigCount, sampleDepth, directPointer(0, dataI), directPointer(1, dataQ));
+			checkRecv(code);
+			return;
+		}
+		stageI = stage(stageI, length);
+		stageQ = stage(stageQ, length);
+		int code = backend.RecvData(id, trigCount, sampleDepth, stageI, stageQ);
+		checkRecv(code);
+		copyStage(stageI, dataI, length);
+		copyStage(stageQ, dataQ, length);
+	}
+
+	/**
+	 * @title recvDataInto
+	 * @description Recieve raw data of ADC and fold it into an accumulator, the
+	 *              accumulator keeps the staging data, so memory stays
+	 *              O(trigCount * sampleDepth) for any count of calls
+	 * @param accumulator
+	 *            Accumulator of the current sampleDepth
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDataInto(ADCAccumulator accumulator) throws Exception {
+		if (accumulator.getSampleDepth() != sampleDepth) {
+			throw new IllegalArgumentException("Sample depth of accumulator does not match the ADC");
+		}
+		ADCRawData data = accumulator.stage(trigCount);
+		recvDataInto(data);
+		accumulator.accumulate(data);
 	}
 
 	/**
@@ -165,20 +301,65 @@ public class USTCADC {
 	 *             Throw exception when receive data failed
 	 */
 	public int[][] recvDemo() throws Exception {
-		Pointer pDataIQ = new Memory(2 * trigCount * 4);
-		int code = CADCLib.INSTANCE.RecvDemo(id, trigCount, pDataIQ);
-		if (code != 0) {
-			Pointer errordata = new Memory(1024);
-			CADCLib.INSTANCE.GetErrorMsg(id, code, errordata);
-			String errormsg = errordata.getString(0L);
-			throw new Exception(errormsg);
-		}
 		int data[][] = new int[2][trigCount];
+		recvDemoInto(data[0], data[1]);
+		return data;
+	}
+
+	/**
+	 * @title recvDemoInto
+	 * @description Recieve demod data of ADC into caller's arrays, nothing is
+	 *              allocated once the staging memory has grown
+	 * @param dataI
+	 *            Channel I array, at least trigCount
+	 * @param dataQ
+	 *            Channel Q array, at least trigCount
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDemoInto(int[] dataI, int[] dataQ) throws Exception {
+		if (dataI.length < trigCount || dataQ.length < trigCount) {
+			throw new IllegalArgumentException("Array is shorter than trigCount");
+		}
+		stageIQ = stage(stageIQ, 8L * trigCount);
+		if (demodStage.length < 2 * trigCount) {
+			demodStage = new int[2 * trigCount];
+		}
+		int code = backend.RecvDemo(id, trigCount, stageIQ);
+		checkRecv(code);
+		int[] dataIQ = demodStage;
+		stageIQ.read(0, dataIQ, 0, 2 * trigCount);
 		for (int i = 0; i < trigCount; i++) {
-			data[0][i] = pDataIQ.getInt(i * 8);
-			data[1][i] = pDataIQ.getInt(i * 8 + 4);
+			dataI[i] = dataIQ[i << 1];
+			dataQ[i] = dataIQ[(i << 1) + 1];
 		}
-		return data;
+	}
+
+	/**
+	 * @title recvDemoInto
+	 * @description Recieve demod data of ADC into caller's buffer from its
+	 *              position, I and Q of each trigger are interleaved as native
+	 *              order ints, position is not changed. A direct buffer is handed
+	 *              to the driver as it is, without staging copy.
+	 * @param dataIQ
+	 *            The buffer, at least 8 * trigCount bytes remaining
+	 * @throws Exception
+	 *             Throw exception when receive data failed
+	 */
+	public void recvDemoInto(ByteBuffer dataIQ) throws Exception {
+		int length = 8 * trigCount;
+		if (dataIQ.remaining() < length) {
+			throw new IllegalArgumentException("Buffer remaining is shorter than 8 * trigCount");
+		}
+		if (dataIQ.isDirect()) {
+			int code = backend.RecvDemo(id, trigCount, directPointer(2, dataIQ));
+			checkRecv(code);
+			return;
+		}
+		stageIQ = stage(stageIQ, length);
+		int code = backend.RecvDemo(id, trigCount, stageIQ);
+		checkRecv(code);
+		copyStage(stageIQ, dataIQ, length);
 	}
 
 	/**
@@ -195,6 +376,7 @@ public class USTCADC {
 		data[3] = (byte) (sampleDepth);
 		sendData(data);
 		this.sampleDepth = sampleDepth;
+		applied = null;
 	}
 
 	/**
@@ -211,6 +393,7 @@ public class USTCADC {
 		data[3] = (byte) (trigCount);
 		sendData(data);
 		this.trigCount = trigCount;
+		applied = null;
 	}
 
 	/**
@@ -227,6 +410,7 @@ public class USTCADC {
 		data[3] = (byte) (windowWidth);
 		sendData(data);
 		this.windowWidth = windowWidth;
+		applied = null;
 	}
 
 	/**
@@ -243,6 +427,7 @@ public class USTCADC {
 		data[3] = (byte) (windowStart);
 		sendData(data);
 		this.windowStart = windowStart;
+		applied = null;
 	}
 
 	/**
@@ -253,13 +438,14 @@ public class USTCADC {
 	 */
 	public void setDemodFreq(double demodFreq) {
 		byte[] data = new byte[4];
-		int step = (int) (demodFreq / sampleRate * 65536);
+		int step = DemodKernelCache.ddsStep(demodFreq, sampleRate);
 		data[0] = demodFreqInst[0];
 		data[1] = demodFreqInst[1];
 		data[2] = (byte) (step >> 8);
 		data[3] = (byte) (step);
 		sendData(data);
 		this.demodFreq = demodFreq;
+		applied = null;
 	}
 
 	/**
@@ -277,6 +463,151 @@ public class USTCADC {
 		data[2] = gainI;
 		data[3] = gainQ;
 		sendData(data);
+		this.gainI = gainI;
+		this.gainQ = gainQ;
+		applied = null;
+	}
+
+	/**
+	 * @title apply
+	 * @description Bring ADC to a config, sending only the settings that
+	 *              differ from the config last applied, one frame per setting
+	 *              unless setCoalesceFrames(true). Every setting is sent on the
+	 *              first apply after openADC or after a setter was called. The
+	 *              config is only recorded when every frame was sent, after a
+	 *              failure the board state is unknown and the next apply sends
+	 *              every setting.
+	 * @param config
+	 *            The config
+	 * @return Count of settings sent successfully
+	 */
+	public int apply(ADCConfig config) {
+		long start = System.nanoTime();
+		ADCConfig last = applied;
+		byte[] frame = new byte[40];
+		int[] ends = new int[8];
+		int count = 0;
+		int pos = 0;
+		if (last == null || last.getDemodMode() != config.getDemodMode()) {
+			System.arraycopy(config.getDemodMode() ? demodModeInst : waveModeInst, 0, frame, pos, 8);
+			pos += 8;
+			ends[count++] = pos;
+		}
+		if (last == null || last.getSampleDepth() != config.getSampleDepth()) {
+			pos = putInstruction(frame, pos, sampleDepthInst, config.getSampleDepth());
+			ends[count++] = pos;
+		}
+		if (last == null || last.getTrigCount() != config.getTrigCount()) {
+			pos = putInstruction(frame, pos, trigCountInst, config.getTrigCount());
+			ends[count++] = pos;
+		}
+		if (last == null || last.getWindowWidth() != config.getWindowWidth()) {
+			pos = putInstruction(frame, pos, windowWidthInst, config.getWindowWidth());
+			ends[count++] = pos;
+		}
+		if (last == null || last.getWindowStart() != config.getWindowStart()) {
+			pos = putInstruction(frame, pos, windowStartInst, config.getWindowStart());
+			ends[count++] = pos;
+		}
+		int step = DemodKernelCache.ddsStep(config.getDemodFreq(), sampleRate);
+		if (last == null || DemodKernelCache.ddsStep(last.getDemodFreq(), sampleRate) != step) {
+			pos = putInstruction(frame, pos, demodFreqInst, step);
+			ends[count++] = pos;
+		}
+		if (last == null || last.getGainI() != config.getGainI() || last.getGainQ() != config.getGainQ()) {
+			pos = putInstruction(frame, pos, setGainInst, ((config.getGainI() & 0xff) << 8) | (config.getGainQ() & 0xff));
+			ends[count++] = pos;
+		}
+		int sent = 0;
+		if (count > 0 && isCoalesceFrames) {
+			frameCount++;
+			if (sendData(Arrays.copyOf(frame, pos))) {
+				sent = count;
+			}
+		} else {
+			while (sent < count) {
+				int from = sent == 0 ? 0 : ends[sent - 1];
+				frameCount++;
+				if (!sendData(Arrays.copyOfRange(frame, from, ends[sent]))) {
+					break;
+				}
+				sent++;
+			}
+		}
+		applies++;
+		sentCount += sent;
+		if (sent < count) {
+			applied = null;
+			applyLatency = System.nanoTime() - start;
+			return sent;
+		}
+		this.isDemod = config.getDemodMode();
+		this.sampleDepth = config.getSampleDepth();
+		this.trigCount = config.getTrigCount();
+		this.windowWidth = config.getWindowWidth();
+		this.windowStart = config.getWindowStart();
+		this.demodFreq = config.getDemodFreq();
+		this.gainI = config.getGainI();
+		this.gainQ = config.getGainQ();
+		applied = config;
+		skippedCount += 7 - count;
+		applyLatency = System.nanoTime() - start;
+		return count;
+	}
+
+	/**
+	 * @title putInstruction
+	 * @description Put a 4 bytes instruction with a 16 bits value in a frame
+	 * @return Position after the instruction
+	 */
+	private static int putInstruction(byte[] frame, int pos, byte[] inst, int value) {
+		frame[pos] = inst[0];
+		frame[pos + 1] = inst[1];
+		frame[pos + 2] = (byte) (value >> 8);
+		frame[pos + 3] = (byte) (value);
+		return pos + 4;
+	}
+
+	/**
+	 * @title setCoalesceFrames
+	 * @description Set whether apply packs all changed settings in one frame
+	 *              as ADCSimulator accepts. The board firmware is not known
+	 *              to take several instructions in one frame, so this is off
+	 *              by default.
+	 * @param isCoalesceFrames
+	 *            True for one frame, false for one frame per setting, the
+	 *            default
+	 */
+	public void setCoalesceFrames(boolean isCoalesceFrames) {
+		this.isCoalesceFrames = isCoalesceFrames;
+	}
+
+	/**
+	 * @title getConfig
+	 * @description Get the current settings as a config
+	 * @return The config
+	 */
+	public ADCConfig getConfig() {
+		return applied != null ? applied
+				: new ADCConfig(isDemod, sampleDepth, trigCount, windowStart, windowWidth, demodFreq, gainI, gainQ);
+	}
+
+	/**
+	 * @title getApplyLatency
+	 * @description Get time the last apply took
+	 * @return Time in nanoseconds
+	 */
+	public long getApplyLatency() {
+		return applyLatency;
+	}
+
+	/**
+	 * @title getApplyStats
+	 * @description Get statistics of apply
+	 * @return {applies, settings sent, settings skipped, frames sent}
+	 */
+	public long[] getApplyStats() {
+		return new long[] { applies, sentCount, skippedCount, frameCount };
 	}
 
 	/**
@@ -319,6 +650,69 @@ public class USTCADC {
 		}
 		sendData(data);
 		this.isDemod = isDemod;
+		applied = null;
+	}
+
+	/**
+	 * @title checkRecv
+	 * @description Throw exception with driver's message when receive failed
+	 * @param code
+	 *            The error code returned by receive function
+	 * @throws Exception
+	 *             Throw exception when code is not 0
+	 */
+	private void checkRecv(int code) throws Exception {
+		if (code != 0) {
+			throw new Exception(USTCADC.getErrorMsg(backend, id, code));
+		}
+	}
+
+	/**
+	 * @title stage
+	 * @description Get staging memory of at least specified size
+	 * @param memory
+	 *            Current staging memory, may be null
+	 * @param size
+	 *            Size in bytes
+	 * @return memory if it is large enough, else a new one
+	 */
+	private static Memory stage(Memory memory, long size) {
+		if (memory != null && memory.size() >= size) {
+			return memory;
+		}
+		return new Memory(Math.max(size, 1));
+	}
+
+	/**
+	 * @title copyStage
+	 * @description Copy staging memory to a heap buffer from its position
+	 */
+	private static void copyStage(Memory memory, ByteBuffer buffer, int length) {
+		if (buffer.hasArray()) {
+			memory.read(0, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.put(memory.getByteBuffer(0, length));
+		}
+	}
+
+	/**
+	 * @title directPointer
+	 * @description Get native pointer at position of a direct buffer, the pointer
+	 *              of the last buffer in each slot is kept for reuse
+	 * @param slot
+	 *            0 for channel I, 1 for channel Q, 2 for demod
+	 * @param buffer
+	 *            The direct buffer
+	 * @return Pointer to the buffer's position
+	 */
+	private Pointer directPointer(int slot, ByteBuffer buffer) {
+		if (directBuffers[slot] != buffer || directPositions[slot] != buffer.position()) {
+			directPointers[slot] = Native.getDirectBufferPointer(buffer).share(buffer.position());
+			directBuffers[slot] = buffer;
+			directPositions[slot] = buffer.position();
+		}
+		return directPointers[slot];
 	}
 
 	/**
@@ -326,14 +720,18 @@ public class USTCADC {
 	 * @description Send data to ADC, the instruction was define in data.
 	 * @param data
 	 *            The raw data to be send
-	 */
-	private void sendData(byte data[]) {
-		Pointer pData = new Memory(data.length);
-		for (int i = 0; i < data.length; i++) {
-			pData.setByte(i, data[i]);
+	 * @return True if the data was sent
+	 */
+	private boolean sendData(byte data[]) {
+		Memory pData = NativeBufferPool.shared().acquire(data.length);
+		try {
+			pData.write(0, data, 0, data.length);
+			int code = backend.SendData(id, data.length, pData);
+			USTCADC.checkReturn(backend, id, code);
+			return code == 0;
+		} finally {
+			NativeBufferPool.shared().release(pData);
 		}
-		int code = CADCLib.INSTANCE.SendData(id, data.length, pData);
-		USTCADC.checkReturn(id, code);
 	}
 
 	/**
@@ -342,14 +740,16 @@ public class USTCADC {
 	 */
 	private void setADCDstMacAddr() {
 		byte[] data = new byte[8];
-		Pointer pMac = new Memory(6);
-		int code = CADCLib.INSTANCE.GetMacAddress(id, 0, pMac);
-		USTCADC.checkReturn(this.id, code);
+		Memory pMac = NativeBufferPool.shared().acquire(6);
+		try {
+			int code = backend.GetMacAddress(id, 0, pMac);
+			USTCADC.checkReturn(backend, this.id, code);
+			pMac.read(0, data, 2, 6);
+		} finally {
+			NativeBufferPool.shared().release(pMac);
+		}
 		data[0] = macAddrInst[0];
 		data[1] = macAddrInst[1];
-		for (int i = 0; i < 6; i++) {
-			data[i + 2] = pMac.getByte(i);
-		}
 		sendData(data);
 	}
 
@@ -440,6 +840,15 @@ public class USTCADC {
 		return sampleRate;
 	}
 
+	/**
+	 * @title getBackend
+	 * @description Get the driver backend of ADC.
+	 * @return backend
+	 */
+	public ADCBackend getBackend() {
+		return backend;
+	}
+
 	/**
 	 * @title getDriverInfo
 	 * @description Get dynamic link library information. @return, the version
@@ -447,11 +856,26 @@ public class USTCADC {
 	 * @return The dll information
 	 */
 	public static String getDriverInfo() {
-		Pointer pData = new Memory(1024);
-		int code = CADCLib.INSTANCE.GetSoftInformation(pData);
-		USTCADC.checkReturn(code);
-		String info = pData.getString(0L);
-		return info;
+		return USTCADC.getDriverInfo(CADCLib.INSTANCE);
+	}
+
+	/**
+	 * @title getDriverInfo
+	 * @description Get version information of specified backend.
+	 * @param backend
+	 *            The driver backend
+	 * @return The backend information
+	 */
+	public static String getDriverInfo(ADCBackend backend) {
+		Memory pData = NativeBufferPool.shared().acquire(1024);
+		try {
+			int code = backend.GetSoftInformation(pData);
+			USTCADC.checkReturn(backend, 0, code);
+			String info = pData.getString(0L);
+			return info;
+		} finally {
+			NativeBufferPool.shared().release(pData);
+		}
 	}
 
 	/**
@@ -474,9 +898,23 @@ public class USTCADC {
 	 */
 	public static void checkReturn(int id, int code) {
 		if (code != 0) {
-			Pointer errordata = new Memory(1024);
-			CADCLib.INSTANCE.GetErrorMsg(id, code, errordata);
-			String errormsg = errordata.getString(0L);
+			USTCADC.checkReturn(CADCLib.INSTANCE, id, code);
+		}
+	}
+
+	/**
+	 * @title checkReturn
+	 * @description Check the return state of ADC on specified backend
+	 * @param backend
+	 *            The driver backend
+	 * @param id
+	 *            ID of ADC
+	 * @param code
+	 *            The error code returned by other function
+	 */
+	public static void checkReturn(ADCBackend backend, int id, int code) {
+		if (code != 0) {
+			String errormsg = USTCADC.getErrorMsg(backend, id, code);
 			try {
 				throw new Exception(errormsg);
 			} catch (Exception e) {
@@ -485,4 +923,26 @@ public class USTCADC {
 		}
 	}
 
-}
+	/**
+	 * @title getErrorMsg
+	 * @description Get error message of error code from backend
+	 * @param backend
+	 *            The driver backend
+	 * @param id
+	 *            ID of ADC
+	 * @param code
+	 *            The error code
+	 * @return The error message
+	 */
+	static String getErrorMsg(ADCBackend backend, int id, int code) {
+		Memory errordata = NativeBufferPool.shared().acquire(1024);
+		try {
+			errordata.setByte(0, (byte) 0);
+			backend.GetErrorMsg(id, code, errordata);
+			return errordata.getString(0L);
+		} finally {
+			NativeBufferPool.shared().release(errordata);
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,289 @@
+/**
+* @project USTCADDA
+* @title NativeBufferPool.java
+* @package ustcadda
+* @description Pool of native memory shared by ADC and DAC
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadda;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jna.Memory;
+
+/**
+ * @className NativeBufferPool
+ * @description Thread safe pool of native memory in power of two size classes.
+ *              A buffer got by acquire must be given back by release once the
+ *              driver call using it returns. Buffers larger than the largest
+ *              class are allocated and dropped as before. Releasing a buffer
+ *              that is already free throws, so it is never handed out twice.
+ *              Free buffers are kept up to a count per class and a total of
+ *              bytes, released buffers above either are dropped, and trim
+ *              drops all free buffers.
+ *              With leak detection on, the stack of every outstanding acquire
+ *              is kept for report.
+ * @date 2026.10.17
+ */
+public class NativeBufferPool {
+	/**
+	 * @fields MIN_SHIFT : The smallest class is 1 << MIN_SHIFT bytes.
+	 */
+	public static final int MIN_SHIFT = 6;
+	/**
+	 * @fields MAX_SHIFT : The largest class is 1 << MAX_SHIFT bytes.
+	 */
+	public static final int MAX_SHIFT = 24;
+	/**
+	 * @fields SHARED_RETAINED_BYTES : Free bytes kept by the shared pool
+	 */
+	public static final long SHARED_RETAINED_BYTES = 32L << 20;
+
+	private static final NativeBufferPool SHARED = new NativeBufferPool(8, SHARED_RETAINED_BYTES);
+
+	private final ConcurrentLinkedQueue<Memory>[] freeLists;
+	private final AtomicInteger[] freeCounts;
+	private final int maxRetained;
+	private final long maxRetainedBytes;
+	private final AtomicLong bytesRetained = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong outstanding = new AtomicLong();
+	private final AtomicLong bytesOutstanding = new AtomicLong();
+	private final Map<Memory, Throwable> leakTraces = new ConcurrentHashMap<Memory, Throwable>();
+	private final Set<Memory> free = Collections.newSetFromMap(new ConcurrentHashMap<Memory, Boolean>());
+	private volatile boolean isLeakDetection = false;
+
+	/**
+	 * Create a pool with no cap on the total of free bytes.
+	 *
+	 * @param maxRetained
+	 *            Maximum count of free buffers kept in each size class
+	 */
+	public NativeBufferPool(int maxRetained) {
+		this(maxRetained, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a pool.
+	 *
+	 * @param maxRetained
+	 *            Maximum count of free buffers kept in each size class
+	 * @param maxRetainedBytes
+	 *            Maximum total of bytes of free buffers kept
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public NativeBufferPool(int maxRetained, long maxRetainedBytes) {
+		int classes = MAX_SHIFT - MIN_SHIFT + 1;
+		this.freeLists = new ConcurrentLinkedQueue[classes];
+		this.freeCounts = new AtomicInteger[classes];
+		for (int i = 0; i < classes; i++) {
+			freeLists[i] = new ConcurrentLinkedQueue<Memory>();
+			freeCounts[i] = new AtomicInteger();
+		}
+		this.maxRetained = maxRetained;
+		this.maxRetainedBytes = maxRetainedBytes;
+	}
+
+	/**
+	 * @title shared
+	 * @description Get the pool shared by USTCADC and USTCDAC
+	 * @return The shared pool
+	 */
+	public static NativeBufferPool shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @title acquire
+	 * @description Get a buffer of at least specified size, the content is not
+	 *              cleared
+	 * @param size
+	 *            Size in bytes
+	 * @return The buffer
+	 */
+	public Memory acquire(long size) {
+		int index = classIndex(size);
+		Memory memory = null;
+		if (index >= 0) {
+			memory = freeLists[index].poll();
+		}
+		if (memory != null) {
+			free.remove(memory);
+			freeCounts[index].decrementAndGet();
+			bytesRetained.addAndGet(-memory.size());
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			memory = new Memory(index >= 0 ? 1L << (index + MIN_SHIFT) : Math.max(size, 1));
+		}
+		outstanding.incrementAndGet();
+		bytesOutstanding.addAndGet(memory.size());
+		if (isLeakDetection) {
+			leakTraces.put(memory, new Throwable("Native buffer of " + memory.size() + " bytes acquired here"));
+		}
+		return memory;
+	}
+
+	/**
+	 * @title release
+	 * @description Give back a buffer got by acquire, null is ignored. The
+	 *              buffer must not be used after.
+	 * @param memory
+	 *            The buffer
+	 * @throws IllegalStateException
+	 *             If the buffer is already free in the pool
+	 */
+	public void release(Memory memory) {
+		if (memory == null) {
+			return;
+		}
+		if (!free.add(memory)) {
+			throw new IllegalStateException("Native buffer of " + memory.size() + " bytes released twice");
+		}
+		outstanding.decrementAndGet();
+		bytesOutstanding.addAndGet(-memory.size());
+		if (isLeakDetection) {
+			leakTraces.remove(memory);
+		}
+		int index = classIndex(memory.size());
+		if (index < 0 || (1L << (index + MIN_SHIFT)) != memory.size()) {
+			free.remove(memory);
+			return;
+		}
+		if (freeCounts[index].incrementAndGet() > maxRetained) {
+			freeCounts[index].decrementAndGet();
+			free.remove(memory);
+			return;
+		}
+		if (bytesRetained.addAndGet(memory.size()) > maxRetainedBytes) {
+			bytesRetained.addAndGet(-memory.size());
+			freeCounts[index].decrementAndGet();
+			free.remove(memory);
+			return;
+		}
+		freeLists[index].offer(memory);
+	}
+
+	/**
+	 * @title trim
+	 * @description Drop every free buffer, so its native memory is freed once
+	 *              collected. Outstanding buffers are not affected.
+	 * @return Bytes of the buffers dropped
+	 */
+	public long trim() {
+		long bytes = 0;
+		for (int i = 0; i < freeLists.length; i++) {
+			Memory memory;
+			while ((memory = freeLists[i].poll()) != null) {
+				free.remove(memory);
+				freeCounts[i].decrementAndGet();
+				bytesRetained.addAndGet(-memory.size());
+				bytes += memory.size();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @title setLeakDetection
+	 * @description Set whether to keep the stack of each outstanding acquire
+	 * @param isLeakDetection
+	 *            True for keeping stacks
+	 */
+	public void setLeakDetection(boolean isLeakDetection) {
+		this.isLeakDetection = isLeakDetection;
+		if (!isLeakDetection) {
+			leakTraces.clear();
+		}
+	}
+
+	/**
+	 * @title reportLeaks
+	 * @description Print the acquire stack of every outstanding buffer, only
+	 *              buffers acquired with leak detection on are known
+	 * @param out
+	 *            The stream to print to
+	 * @return Count of reported buffers
+	 */
+	public int reportLeaks(PrintStream out) {
+		int count = 0;
+		for (Throwable trace : leakTraces.values()) {
+			trace.printStackTrace(out);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @title getHits
+	 * @description Get count of acquires served from the pool
+	 * @return hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @title getMisses
+	 * @description Get count of acquires that allocated native memory
+	 * @return misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @title getOutstanding
+	 * @description Get count of buffers acquired and not released
+	 * @return outstanding
+	 */
+	public long getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @title getBytesOutstanding
+	 * @description Get bytes of buffers acquired and not released
+	 * @return bytesOutstanding
+	 */
+	public long getBytesOutstanding() {
+		return bytesOutstanding.get();
+	}
+
+	/**
+	 * @title getBytesRetained
+	 * @description Get bytes of free buffers kept by the pool
+	 * @return bytesRetained
+	 */
+	public long getBytesRetained() {
+		return bytesRetained.get();
+	}
+
+	@Override
+	public String toString() {
+		return "NativeBufferPool[hits=" + hits.get() + ", misses=" + misses.get() + ", outstanding="
+				+ outstanding.get() + ", bytesOutstanding=" + bytesOutstanding.get() + ", bytesRetained="
+				+ bytesRetained.get() + "]";
+	}
+
+	private static int classIndex(long size) {
+		if (size > (1L << MAX_SHIFT)) {
+			return -1;
+		}
+		if (size <= (1L << MIN_SHIFT)) {
+			return 0;
+		}
+		return 64 - Long.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+* @project USTCADDA
+* @title OffHeapCache.java
+* @package ustcadda
+* @description Bounded LRU cache of off heap buffers
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadda;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @className OffHeapCache
+ * @description Thread safe LRU cache of direct buffers in native byte order,
+ *              bounded by their total bytes. Values are built once by a Builder
+ *              outside the lock and handed out as read only views, so the cache
+ *              keeps large tables out of the Java heap.
+ * @date 2026.10.17
+ */
+public class OffHeapCache<K> {
+	/**
+	 * @className Builder
+	 * @description Fill the buffer of a missing key.
+	 */
+	public interface Builder<K> {
+		/**
+		 * @title build
+		 * @description Fill the buffer from position 0 to its capacity
+		 * @param key
+		 *            The missing key
+		 * @param buffer
+		 *            A direct buffer in native byte order
+		 */
+		void build(K key, ByteBuffer buffer);
+	}
+
+	private final long maxBytes;
+	private final LinkedHashMap<K, ByteBuffer> map = new LinkedHashMap<K, ByteBuffer>(16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxBytes
+	 *            Maximum total bytes of cached buffers
+	 */
+	public OffHeapCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @title get
+	 * @description Get the buffer of a key, build it if missing
+	 * @param key
+	 *            The key
+	 * @param size
+	 *            Size in bytes of the buffer to build
+	 * @param builder
+	 *            Builder of a missing buffer
+	 * @return Read only view of the buffer, position 0, native byte order
+	 */
+	public ByteBuffer get(K key, int size, Builder<K> builder) {
+		synchronized (this) {
+			ByteBuffer buffer = map.get(key);
+			if (buffer != null) {
+				hits++;
+				return view(buffer);
+			}
+			misses++;
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+		builder.build(key, buffer);
+		buffer.clear();
+		synchronized (this) {
+			ByteBuffer old = map.get(key);
+			if (old != null) {
+				return view(old);
+			}
+			if (size <= maxBytes) {
+				map.put(key, buffer);
+				bytes += size;
+				evict();
+			}
+		}
+		return view(buffer);
+	}
+
+	/**
+	 * @title clear
+	 * @description Drop all cached buffers
+	 */
+	public synchronized void clear() {
+		map.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @title getBytes
+	 * @description Get total bytes of cached buffers
+	 * @return bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @title getSize
+	 * @description Get count of cached buffers
+	 * @return Count
+	 */
+	public synchronized int getSize() {
+		return map.size();
+	}
+
+	/**
+	 * @title getHits
+	 * @description Get count of gets served from cache
+	 * @return hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @title getMisses
+	 * @description Get count of gets that built a buffer
+	 * @return misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @title getEvictions
+	 * @description Get count of buffers evicted
+	 * @return evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OffHeapCache[size=" + map.size() + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + "]";
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<K, ByteBuffer>> it = map.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().getValue().capacity();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private static ByteBuffer view(ByteBuffer buffer) {
+		return buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+	}
+}
@@ -0,0 +1,280 @@
+/**
+* @project USTCADDA
+* @title SweepExecutor.java
+* @package ustcadda
+* @description Pipelined DAC upload and ADC acquisition of sweep points
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcadda;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+import ustcadc.USTCADC;
+import ustcdac.USTCDAC;
+
+/**
+ * @className SweepExecutor
+ * @description Run sweep points with the upload of one point overlapping the
+ *              acquisition of the one before. Wave memory of each channel is
+ *              split in two banks of bankSize points, point n uses the bank at
+ *              memOffset (n % 2) * bankSize. Each point goes through four
+ *              stages, each a future depending on the futures it needs:
+ *              upload(n) after play(n - 1) and acquire(n - 2), which freed its
+ *              bank; arm(n), enabling ADC, after upload(n) and acquire(n - 1);
+ *              play(n) after arm(n); acquire(n) after play(n). DAC stages run on
+ *              one DAC thread and ADC stages on one ADC thread, so upload(n + 1)
+ *              runs on the DAC while acquire(n) waits on the ADC, and a point
+ *              costs about max(upload, acquire). A failed stage fails every
+ *              later point. While the executor is open the DAC and ADC belong
+ *              to its threads.
+ * @date 2026.10.17
+ */
+public class SweepExecutor implements AutoCloseable {
+	/**
+	 * @fields WAVE_POINTS : Wave points of one channel in DAC memory
+	 */
+	public static final int WAVE_POINTS = 1 << 17;
+
+	/**
+	 * @className Point
+	 * @description DAC side of one sweep point.
+	 */
+	public interface Point {
+		/**
+		 * @title upload
+		 * @description Write the waves of the point, may run while the
+		 *              previous point is played
+		 * @param dac
+		 *            The DAC
+		 * @param memOffset
+		 *            Wave memOffset of the point's bank
+		 * @throws Exception
+		 *             Throw exception to fail the point
+		 */
+		void upload(USTCDAC dac, int memOffset) throws Exception;
+
+		/**
+		 * @title play
+		 * @description Write the seq pointing at the bank and start output,
+		 *              runs after ADC is enabled for the point
+		 * @param dac
+		 *            The DAC
+		 * @param memOffset
+		 *            Wave memOffset of the point's bank
+		 * @throws Exception
+		 *             Throw exception to fail the point
+		 */
+		void play(USTCDAC dac, int memOffset) throws Exception;
+	}
+
+	/**
+	 * @className Stage
+	 * @description Work of one stage.
+	 */
+	interface Stage<T> {
+		T run() throws Exception;
+	}
+
+	private final USTCDAC dac;
+	private final USTCADC adc;
+	private final int bankSize;
+	private final ExecutorService dacExecutor;
+	private final ExecutorService adcExecutor;
+	private CompletableFuture<?> lastPlayed = CompletableFuture.completedFuture(null);
+	private CompletableFuture<?> lastAcquired = CompletableFuture.completedFuture(null);
+	private CompletableFuture<?> previousAcquired = CompletableFuture.completedFuture(null);
+	private int count;
+	private long startTime;
+	private volatile long lastDone;
+	private volatile long uploadTime;
+	private volatile long acquireTime;
+
+	/**
+	 * Create an executor on an opened DAC and an opened ADC in demod mode.
+	 *
+	 * @param dac
+	 *            The DAC
+	 * @param adc
+	 *            The ADC
+	 * @param bankSize
+	 *            Wave points of each bank, at most WAVE_POINTS / 2
+	 */
+	public SweepExecutor(USTCDAC dac, USTCADC adc, int bankSize) {
+		if (bankSize <= 0 || bankSize > WAVE_POINTS / 2) {
+			throw new IllegalArgumentException("Bank size " + bankSize + " is not in 1~" + WAVE_POINTS / 2);
+		}
+		this.dac = dac;
+		this.adc = adc;
+		this.bankSize = bankSize;
+		this.dacExecutor = Executors.newSingleThreadExecutor(threads("SweepExecutor-DAC"));
+		this.adcExecutor = Executors.newSingleThreadExecutor(threads("SweepExecutor-ADC"));
+	}
+
+	/**
+	 * @title submit
+	 * @description Queue a sweep point
+	 * @param point
+	 *            DAC side of the point
+	 * @return Future of the demod data, the demension is [2, trigCount]
+	 */
+	public synchronized CompletableFuture<int[][]> submit(final Point point) {
+		if (count == 0) {
+			startTime = System.nanoTime();
+		}
+		final int memOffset = (count & 1) * bankSize;
+		count++;
+		CompletableFuture<Void> uploaded = CompletableFuture.allOf(lastPlayed, previousAcquired)
+				.thenApplyAsync(task(new Stage<Void>() {
+					@Override
+					public Void run() throws Exception {
+						long start = System.nanoTime();
+						dac.clearLastError();
+						point.upload(dac, memOffset);
+						checkDAC();
+						uploadTime += System.nanoTime() - start;
+						return null;
+					}
+				}), dacExecutor);
+		CompletableFuture<Void> armed = CompletableFuture.allOf(uploaded, lastAcquired)
+				.thenApplyAsync(task(new Stage<Void>() {
+					@Override
+					public Void run() {
+						adc.enableADC();
+						return null;
+					}
+				}), adcExecutor);
+		CompletableFuture<Void> played = armed.thenApplyAsync(task(new Stage<Void>() {
+			@Override
+			public Void run() throws Exception {
+				dac.clearLastError();
+				point.play(dac, memOffset);
+				checkDAC();
+				return null;
+			}
+		}), dacExecutor);
+		CompletableFuture<int[][]> acquired = played.thenApplyAsync(task(new Stage<int[][]>() {
+			@Override
+			public int[][] run() throws Exception {
+				long start = System.nanoTime();
+				int[][] data = adc.recvDemo();
+				long end = System.nanoTime();
+				acquireTime += end - start;
+				lastDone = end;
+				return data;
+			}
+		}), adcExecutor);
+		lastPlayed = played;
+		previousAcquired = lastAcquired;
+		lastAcquired = acquired;
+		return acquired;
+	}
+
+	/**
+	 * @title flush
+	 * @description Get a future completed when every point submitted so far
+	 *              is acquired
+	 * @return Future completed exceptionally if the last point failed
+	 */
+	public synchronized CompletableFuture<Void> flush() {
+		return CompletableFuture.allOf(lastAcquired);
+	}
+
+	/**
+	 * @title getPointCount
+	 * @description Get count of points submitted
+	 * @return Point count
+	 */
+	public synchronized int getPointCount() {
+		return count;
+	}
+
+	/**
+	 * @title getUploadTime
+	 * @description Get total time of upload stages
+	 * @return Time in nanoseconds
+	 */
+	public long getUploadTime() {
+		return uploadTime;
+	}
+
+	/**
+	 * @title getAcquireTime
+	 * @description Get total time of acquire stages
+	 * @return Time in nanoseconds
+	 */
+	public long getAcquireTime() {
+		return acquireTime;
+	}
+
+	/**
+	 * @title getTimePerPoint
+	 * @description Get wall time from the first submit to the last point
+	 *              acquired, divided by the count of points
+	 * @return Time in nanoseconds, 0 before any point is acquired
+	 */
+	public synchronized long getTimePerPoint() {
+		long done = lastDone;
+		return count == 0 || done == 0 ? 0 : (done - startTime) / count;
+	}
+
+	/**
+	 * @title close
+	 * @description Wait for submitted points and stop the threads
+	 */
+	@Override
+	public void close() {
+		try {
+			flush().join();
+		} catch (RuntimeException e) {
+			// Failures are reported by the futures of the points.
+		} finally {
+			dacExecutor.shutdown();
+			adcExecutor.shutdown();
+		}
+	}
+
+	private void checkDAC() throws Exception {
+		int code = dac.getLastError();
+		if (code != 0) {
+			throw new Exception("DAC returned error code " + code);
+		}
+	}
+
+	/**
+	 * @title task
+	 * @description Wrap a stage as the function of a dependent future
+	 */
+	private static <T> Function<Object, T> task(final Stage<T> stage) {
+		return new Function<Object, T>() {
+			@Override
+			public T apply(Object ignored) {
+				try {
+					return stage.run();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}
+		};
+	}
+
+	private static ThreadFactory threads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,189 @@
+/**
+* @project USTCADDA
+* @title DACBackend.java
+* @package ustcdac
+* @description The driver interface behind USTCDAC
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * @className DACBackend
+ * @description The functions USTCDAC needs from a DAC driver. The signatures
+ *              follow USTCDACDriver with UINT and USHORT mapped to int and
+ *              short, which have the same native size, so CDACLib is a backend
+ *              as it is. Every WriteInstruction, WriteMemory and ReadMemory is
+ *              pushed onto a function stack, offset 1 is the latest one.
+ * @date 2026.10.17
+ */
+public interface DACBackend {
+	/**
+	 * @title OpenDAC
+	 * @description Open connection to DAC
+	 * @param pID
+	 *            Receive the ID of opened DAC
+	 * @param ip
+	 *            DAC ip address
+	 * @param port
+	 *            DAC serve port
+	 * @return Error code, 0 for success
+	 */
+	int OpenDAC(IntByReference pID, String ip, short port);
+
+	/**
+	 * @title CloseDAC
+	 * @description Close connection to DAC
+	 * @param id
+	 *            ID of DAC
+	 * @return Error code, 0 for success
+	 */
+	int CloseDAC(int id);
+
+	/**
+	 * @title WriteInstruction
+	 * @description Push an instruction onto the function stack
+	 * @param id
+	 *            ID of DAC
+	 * @param instruction
+	 *            Instruction defined by DAC
+	 * @param para1
+	 *            First parameter
+	 * @param para2
+	 *            Second parameter
+	 * @return Error code, 0 for success
+	 */
+	int WriteInstruction(int id, int instruction, int para1, int para2);
+
+	/**
+	 * @title WriteMemory
+	 * @description Push a memory write onto the function stack
+	 * @param id
+	 *            ID of DAC
+	 * @param instruction
+	 *            Instruction defined by DAC
+	 * @param start
+	 *            Start address of memory
+	 * @param length
+	 *            Length in bytes
+	 * @param pData
+	 *            The data to be written
+	 * @return Error code, 0 for success
+	 */
+	int WriteMemory(int id, int instruction, int start, int length, Pointer pData);
+
+	/**
+	 * @title ReadMemory
+	 * @description Push a memory read onto the function stack, the data is got by
+	 *              GetReturn
+	 * @param id
+	 *            ID of DAC
+	 * @param instruction
+	 *            Instruction defined by DAC
+	 * @param start
+	 *            Start address of memory
+	 * @param length
+	 *            Length in bytes
+	 * @return Error code, 0 for success
+	 */
+	int ReadMemory(int id, int instruction, int start, int length);
+
+	/**
+	 * @title SetTimeOut
+	 * @description Set sending or receiving timeout
+	 * @param id
+	 *            ID of DAC
+	 * @param direction
+	 *            1 for sending, 0 for receiving
+	 * @param time
+	 *            The unit is second
+	 * @return Error code, 0 for success
+	 */
+	int SetTimeOut(int id, int direction, float time);
+
+	/**
+	 * @title GetFunctionType
+	 * @description Get function in the function stack
+	 * @param id
+	 *            ID of DAC
+	 * @param offset
+	 *            Offset of function stack, 1 for latest function
+	 * @return Error code, 0 for success
+	 */
+	int GetFunctionType(int id, int offset, IntByReference pFuncType, IntByReference pInstruction,
+			IntByReference pPara1, IntByReference pPara2);
+
+	/**
+	 * @title GetReturn
+	 * @description Get return of function in the function stack, wait until it
+	 *              returned
+	 * @param id
+	 *            ID of DAC
+	 * @param offset
+	 *            Offset of function stack, 1 for latest function
+	 * @param pData
+	 *            Receive data of memory function, null for instruction
+	 * @return Error code, 0 for success
+	 */
+	int GetReturn(int id, int offset, IntByReference pRetStat, IntByReference pRetData, Pointer pData);
+
+	/**
+	 * @title CheckFinished
+	 * @description Check whether all functions have returned
+	 * @param id
+	 *            ID of DAC
+	 * @param pIsFinised
+	 *            Receive 1 for finished
+	 * @return Error code, 0 for success
+	 */
+	int CheckFinished(int id, IntByReference pIsFinised);
+
+	/**
+	 * @title WaitUntilFinished
+	 * @description Wait until all functions have returned
+	 * @param id
+	 *            ID of DAC
+	 * @param time
+	 *            The unit is millisecond
+	 * @return Error code, 0 for success
+	 */
+	int WaitUntilFinished(int id, int time);
+
+	/**
+	 * @title GetSoftInformation
+	 * @description Get version information of the driver
+	 * @param info
+	 *            The buffer, 1024 bytes
+	 * @return Error code, 0 for success
+	 */
+	int GetSoftInformation(Pointer info);
+
+	/**
+	 * @title CheckSuccessed
+	 * @description Check whether all returned functions succeeded
+	 * @param id
+	 *            ID of DAC
+	 * @param pIsSuccessed
+	 *            Receive 1 for succeeded
+	 * @param pPostion
+	 *            Receive offset of the failed function
+	 * @return Error code, 0 for success
+	 */
+	int CheckSuccessed(int id, IntByReference pIsSuccessed, IntByReference pPostion);
+
+	/**
+	 * @title GetErrorMsg
+	 * @description Get error message of error code
+	 * @param errorCode
+	 *            The error code
+	 * @param pMsg
+	 *            The buffer, 1024 bytes
+	 * @return Error code, 0 for success
+	 */
+	int GetErrorMsg(int errorCode, Pointer pMsg);
+}
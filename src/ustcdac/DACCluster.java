@@ -0,0 +1,448 @@
+/**
+* @project USTCADDA
+* @title DACCluster.java
+* @package ustcdac
+* @description Parallel control of many DAC boards
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @className DACCluster
+ * @description Run the same operation on many boards at once, one pool thread
+ *              per board, so the time of an operation is the time of the
+ *              slowest board. A board whose operation throws, returns a backend
+ *              error or times out is reported in the Result and left out of
+ *              later operations until clearFailures, the other boards go on.
+ * @date 2026.10.17
+ */
+public class DACCluster implements AutoCloseable {
+	/**
+	 * @className BoardTask
+	 * @description Operation on one board.
+	 */
+	public interface BoardTask {
+		/**
+		 * @title run
+		 * @description Run the operation
+		 * @param dac
+		 *            The board
+		 * @param index
+		 *            Index of the board in the cluster
+		 * @throws Exception
+		 *             Throw exception when the operation failed
+		 */
+		void run(USTCDAC dac, int index) throws Exception;
+	}
+
+	/**
+	 * @className Result
+	 * @description Result of one operation on the cluster.
+	 */
+	public static class Result {
+		private final Map<Integer, Throwable> failures;
+		private final int boardCount;
+		private final long elapsed;
+
+		Result(Map<Integer, Throwable> failures, int boardCount, long elapsed) {
+			this.failures = Collections.unmodifiableMap(failures);
+			this.boardCount = boardCount;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * @title isSuccess
+		 * @description Get whether every board succeeded
+		 * @return True if no failure
+		 */
+		public boolean isSuccess() {
+			return failures.isEmpty();
+		}
+
+		/**
+		 * @title getFailures
+		 * @description Get failure of each failed board
+		 * @return Map from board index to its failure
+		 */
+		public Map<Integer, Throwable> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @title getBoardCount
+		 * @description Get count of boards the operation ran on
+		 * @return Board count
+		 */
+		public int getBoardCount() {
+			return boardCount;
+		}
+
+		/**
+		 * @title getElapsed
+		 * @description Get wall clock time of the operation
+		 * @return Time in nanoseconds
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d boards, %d failed, %.1f ms", boardCount, failures.size(), elapsed / 1e6);
+		}
+	}
+
+	private final List<USTCDAC> boards;
+	private final boolean[] isFailed;
+	private final ExecutorService executor;
+	private final int threads;
+	private volatile long timeout = 60000;
+	private int masterIndex = -1;
+
+	/**
+	 * Create a cluster with one thread per board.
+	 *
+	 * @param boards
+	 *            The boards
+	 */
+	public DACCluster(List<USTCDAC> boards) {
+		this(boards, boards.size());
+	}
+
+	/**
+	 * Create a cluster.
+	 *
+	 * @param boards
+	 *            The boards
+	 * @param threads
+	 *            Count of threads talking to boards at the same time
+	 */
+	public DACCluster(List<USTCDAC> boards, int threads) {
+		this.boards = new ArrayList<USTCDAC>(boards);
+		this.isFailed = new boolean[boards.size()];
+		this.threads = Math.max(1, threads);
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DACCluster-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @title setTimeout
+	 * @description Set time a board may take for one operation
+	 * @param millis
+	 *            The unit is millisecond
+	 */
+	public void setTimeout(long millis) {
+		this.timeout = millis;
+	}
+
+	/**
+	 * @title forEach
+	 * @description Run an operation on every healthy board at once
+	 * @param task
+	 *            The operation
+	 * @return The result
+	 */
+	public Result forEach(final BoardTask task) {
+		long start = System.nanoTime();
+		List<Integer> indexes = getHealthy();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final int index : indexes) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					runChecked(task, index);
+					return null;
+				}
+			}));
+		}
+		return collect(indexes, futures, start);
+	}
+
+	/**
+	 * @title open
+	 * @description Open every board
+	 * @return The result
+	 */
+	public Result open() {
+		return forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				dac.openDAC();
+			}
+		});
+	}
+
+	/**
+	 * @title initBoard
+	 * @description Init every board
+	 * @return The result
+	 */
+	public Result initBoard() {
+		return forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				dac.initBoard();
+			}
+		});
+	}
+
+	/**
+	 * @title setMaster
+	 * @description Make one board master and the others slaves, and set their
+	 *              trigger select
+	 * @param masterIndex
+	 *            Index of the master board
+	 * @param masterTrigSel
+	 *            Trigger select of the master
+	 * @param slaveTrigSel
+	 *            Trigger select of slaves
+	 * @return The result
+	 */
+	public Result setMaster(final int masterIndex, final int masterTrigSel, final int slaveTrigSel) {
+		this.masterIndex = masterIndex;
+		return forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				boolean isMaster = index == masterIndex;
+				dac.setIsMaster(isMaster);
+				dac.setTrigSel(isMaster ? masterTrigSel : slaveTrigSel);
+			}
+		});
+	}
+
+	/**
+	 * @title writeWave
+	 * @description Write one wave per board
+	 * @param channel
+	 *            The channel can be 1~4
+	 * @param memOffset
+	 *            The offset wave point of memory
+	 * @param waves
+	 *            Wave of each board, by index, null to skip a board
+	 * @return The result
+	 */
+	public Result writeWave(final int channel, final int memOffset, final int[][] waves) {
+		return forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				if (index < waves.length && waves[index] != null) {
+					dac.writeWave(channel, memOffset, waves[index]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @title writeSeq
+	 * @description Write one seq per board
+	 * @param channel
+	 *            The channel can be 1~4
+	 * @param memOffset
+	 *            The offset seq of memory
+	 * @param seqs
+	 *            Seq of each board, by index, null to skip a board
+	 * @return The result
+	 */
+	public Result writeSeq(final int channel, final int memOffset, final long[][] seqs) {
+		return forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				if (index < seqs.length && seqs[index] != null) {
+					dac.writeSeq(channel, memOffset, seqs[index]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @title startStop
+	 * @description Start or stop channels of every board. The threads of all
+	 *              boards wait at a barrier and send together, when there are
+	 *              threads for all of them, and the master set by setMaster
+	 *              sends after all slaves.
+	 * @param index
+	 *            0x0f to start all channel, 0xf0 to stop all channel
+	 * @return The result
+	 */
+	public Result startStop(final int index) {
+		long start = System.nanoTime();
+		final List<Integer> indexes = getHealthy();
+		final boolean hasMaster = indexes.contains(masterIndex);
+		int slaves = indexes.size() - (hasMaster ? 1 : 0);
+		final CyclicBarrier barrier = slaves > 1 && slaves <= threads ? new CyclicBarrier(slaves) : null;
+		final List<Future<?>> slaveFutures = new ArrayList<Future<?>>();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final int board : indexes) {
+			if (hasMaster && board == masterIndex) {
+				futures.add(null);
+				continue;
+			}
+			Future<?> future = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (barrier != null) {
+						try {
+							barrier.await(timeout, TimeUnit.MILLISECONDS);
+						} catch (BrokenBarrierException e) {
+							// Another board failed to arrive, send anyway.
+						}
+					}
+					runChecked(new BoardTask() {
+						@Override
+						public void run(USTCDAC dac, int i) {
+							dac.startStop(index);
+						}
+					}, board);
+					return null;
+				}
+			});
+			futures.add(future);
+			slaveFutures.add(future);
+		}
+		if (hasMaster) {
+			int position = indexes.indexOf(masterIndex);
+			futures.set(position, executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (Future<?> future : slaveFutures) {
+						try {
+							future.get(timeout, TimeUnit.MILLISECONDS);
+						} catch (ExecutionException e) {
+							// The slave is reported by its own future.
+						}
+					}
+					runChecked(new BoardTask() {
+						@Override
+						public void run(USTCDAC dac, int i) {
+							dac.startStop(index);
+						}
+					}, masterIndex);
+					return null;
+				}
+			}));
+		}
+		return collect(indexes, futures, start);
+	}
+
+	/**
+	 * @title getBoard
+	 * @description Get a board of the cluster
+	 * @param index
+	 *            Index of the board
+	 * @return The board
+	 */
+	public USTCDAC getBoard(int index) {
+		return boards.get(index);
+	}
+
+	/**
+	 * @title getBoardCount
+	 * @description Get count of boards
+	 * @return Board count
+	 */
+	public int getBoardCount() {
+		return boards.size();
+	}
+
+	/**
+	 * @title getHealthy
+	 * @description Get indexes of boards not failed
+	 * @return Board indexes
+	 */
+	public synchronized List<Integer> getHealthy() {
+		List<Integer> indexes = new ArrayList<Integer>();
+		for (int i = 0; i < boards.size(); i++) {
+			if (!isFailed[i]) {
+				indexes.add(i);
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * @title clearFailures
+	 * @description Let failed boards take part in operations again
+	 */
+	public synchronized void clearFailures() {
+		for (int i = 0; i < isFailed.length; i++) {
+			isFailed[i] = false;
+		}
+	}
+
+	/**
+	 * @title close
+	 * @description Close every board and stop the threads
+	 */
+	@Override
+	public void close() {
+		clearFailures();
+		forEach(new BoardTask() {
+			@Override
+			public void run(USTCDAC dac, int index) {
+				dac.closeDAC();
+			}
+		});
+		executor.shutdownNow();
+	}
+
+	private void runChecked(BoardTask task, int index) throws Exception {
+		USTCDAC dac = boards.get(index);
+		dac.clearLastError();
+		task.run(dac, index);
+		int code = dac.getLastError();
+		if (code != 0) {
+			throw new Exception("DAC " + index + ": " + USTCDAC.getErrorMsg(dac.getBackend(), code));
+		}
+	}
+
+	private Result collect(List<Integer> indexes, List<Future<?>> futures, long start) {
+		Map<Integer, Throwable> failures = new LinkedHashMap<Integer, Throwable>();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		for (int i = 0; i < indexes.size(); i++) {
+			try {
+				futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (ExecutionException e) {
+				failures.put(indexes.get(i), e.getCause());
+			} catch (TimeoutException e) {
+				futures.get(i).cancel(true);
+				failures.put(indexes.get(i), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.put(indexes.get(i), e);
+			}
+		}
+		synchronized (this) {
+			for (int index : failures.keySet()) {
+				isFailed[index] = true;
+			}
+		}
+		return new Result(failures, indexes.size(), System.nanoTime() - start);
+	}
+}
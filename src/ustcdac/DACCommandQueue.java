@@ -0,0 +1,368 @@
+/**
+* @project USTCADDA
+* @title DACCommandQueue.java
+* @package ustcdac
+* @description Asynchronous pipeline of DAC functions
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.sun.jna.Memory;
+import com.sun.jna.ptr.IntByReference;
+
+import ustcadda.NativeBufferPool;
+
+/**
+ * @className DACCommandQueue
+ * @description Push functions onto the function stack of an opened USTCDAC
+ *              without waiting for each return. Every call returns a future
+ *              completed by a poller thread: it waits with WaitUntilFinished,
+ *              checks CheckFinished and CheckSuccessed under the function
+ *              lock of the USTCDAC, and completes every pending future at
+ *              once. The return of a function is read by GetReturn at offset
+ *              functionCount - k + 1 only when it carries data or when
+ *              CheckSuccessed reported a failure, so a batch of writes costs
+ *              one round trip. At most MAX_IN_FLIGHT functions are pending, so
+ *              offsets stay inside the function stack. The pooled buffer of a
+ *              memory write is kept by its pending entry and released when the
+ *              function returns. The USTCDAC pushes its own functions under
+ *              the same lock, so direct calls on it may be mixed with the
+ *              queue, from the thread issuing to the queue.
+ * @date 2026.10.17
+ */
+public class DACCommandQueue implements AutoCloseable {
+	/**
+	 * @fields MAX_IN_FLIGHT : Functions pending before issuing waits
+	 */
+	public static final int MAX_IN_FLIGHT = 1024;
+	/**
+	 * @fields POLL_MILLIS : Time of each WaitUntilFinished
+	 */
+	static final int POLL_MILLIS = 100;
+
+	/**
+	 * @className Pending
+	 * @description A function waiting for its return.
+	 */
+	static class Pending {
+		final long number;
+		final boolean isRead;
+		final Memory pData;
+		final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
+		Pending(long number, boolean isRead, Memory pData) {
+			this.number = number;
+			this.isRead = isRead;
+			this.pData = pData;
+		}
+	}
+
+	private final USTCDAC dac;
+	private final DACBackend backend;
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+	/**
+	 * @fields lock : The function lock of the DAC, guarding pending
+	 */
+	private final Object lock;
+	private final Thread poller;
+	private volatile boolean isClosed;
+	private long roundTrips;
+
+	/**
+	 * Create a queue on an opened DAC and start its poller.
+	 *
+	 * @param dac
+	 *            The opened DAC
+	 */
+	public DACCommandQueue(USTCDAC dac) {
+		this.dac = dac;
+		this.backend = dac.getBackend();
+		this.lock = dac.getFunctionLock();
+		this.poller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, "DACCommandQueue");
+		poller.setDaemon(true);
+		poller.start();
+	}
+
+	/**
+	 * @title writeInstruction
+	 * @description Push an instruction
+	 * @param instruction
+	 *            Instruction defined by DAC
+	 * @param para1
+	 *            First parameter
+	 * @param para2
+	 *            Second parameter
+	 * @return Future of the return data
+	 */
+	public CompletableFuture<Integer> writeInstruction(int instruction, int para1, int para2) {
+		return issue(instruction, para1, para2, false);
+	}
+
+	/**
+	 * @title writeReg
+	 * @description Push a register write
+	 * @param bank
+	 *            The register bank
+	 * @param addr
+	 *            The register address
+	 * @param data
+	 *            The register data
+	 * @return Future of the return data
+	 */
+	public CompletableFuture<Integer> writeReg(int bank, int addr, int data) {
+		dac.getRegisterShadow().invalidate(RegisterShadow.BOARD, bank, addr);
+		return issue(USTCDAC.writeRegInst(bank), addr, data, false);
+	}
+
+	/**
+	 * @title readReg
+	 * @description Push a register read
+	 * @param bank
+	 *            Bank address of register
+	 * @param addr
+	 *            Address of register
+	 * @return Future of the register value
+	 */
+	public CompletableFuture<Integer> readReg(int bank, int addr) {
+		return issue(USTCDAC.readRegInst(bank), addr, 0, true);
+	}
+
+	/**
+	 * @title readAD9136
+	 * @description Push a read of DAC(ad9136) chip's register
+	 * @param chip
+	 *            The selected chip, this can be 1~2
+	 * @param addr
+	 *            The register address
+	 * @return Future of the register data
+	 */
+	public CompletableFuture<Integer> readAD9136(int chip, int addr) {
+		return issue(chip == 1 ? USTCDAC.READAD9136C1 : USTCDAC.READAD9136C2, addr, 0, true);
+	}
+
+	/**
+	 * @title writeWave
+	 * @description Push a wave write, always sent whole
+	 * @param channel
+	 *            The channel can be 1~4
+	 * @param memOffset
+	 *            The offset wave point of memory
+	 * @param data
+	 *            The wave data
+	 * @return Future of the return data
+	 */
+	public CompletableFuture<Integer> writeWave(int channel, int memOffset, int[] data) {
+		int length = WaveEncoder.waveLength(data.length);
+		Memory pData = NativeBufferPool.shared().acquire(length);
+		WaveEncoder.encodeWave(data, pData);
+		return issueMemory(USTCDAC.waveAddr(channel, memOffset), pData, length);
+	}
+
+	/**
+	 * @title writeSeq
+	 * @description Push a seq write, always sent whole
+	 * @param channel
+	 *            The channel can be 1~4
+	 * @param memOffset
+	 *            The offset seq of memory
+	 * @param seq
+	 *            The sequence data, each sequence has 64bits
+	 * @return Future of the return data
+	 */
+	public CompletableFuture<Integer> writeSeq(int channel, int memOffset, long[] seq) {
+		int length = seq.length << 3;
+		Memory pData = NativeBufferPool.shared().acquire(length);
+		WaveEncoder.encodeSeq(seq, pData);
+		return issueMemory(USTCDAC.seqAddr(channel, memOffset), pData, length);
+	}
+
+	/**
+	 * @title flush
+	 * @description Get a future completed when every function pushed so far
+	 *              has returned
+	 * @return Future completed exceptionally if any of them failed
+	 */
+	public CompletableFuture<Void> flush() {
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		synchronized (lock) {
+			for (Pending p : pending) {
+				futures.add(p.future);
+			}
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	/**
+	 * @title getPending
+	 * @description Get count of functions waiting for return
+	 * @return Pending count
+	 */
+	public int getPending() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * @title getRoundTrips
+	 * @description Get count of polls that completed functions
+	 * @return Round trip count
+	 */
+	public long getRoundTrips() {
+		synchronized (lock) {
+			return roundTrips;
+		}
+	}
+
+	/**
+	 * @title close
+	 * @description Wait for pending functions and stop the poller
+	 */
+	@Override
+	public void close() {
+		isClosed = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		try {
+			poller.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private CompletableFuture<Integer> issue(int instruction, int para1, int para2, boolean isRead) {
+		synchronized (lock) {
+			awaitRoom();
+			int code = dac.issueInstruction(instruction, para1, para2);
+			return track(code, isRead, null);
+		}
+	}
+
+	/**
+	 * @title issueMemory
+	 * @description Push a memory write, pData is owned by the queue from now
+	 *              on and released once the function returns
+	 */
+	private CompletableFuture<Integer> issueMemory(int startAddr, Memory pData, int length) {
+		synchronized (lock) {
+			int code;
+			try {
+				awaitRoom();
+				code = dac.issueMemory(startAddr, pData, length);
+			} catch (RuntimeException e) {
+				NativeBufferPool.shared().release(pData);
+				throw e;
+			}
+			return track(code, false, pData);
+		}
+	}
+
+	private void awaitRoom() {
+		if (isClosed) {
+			throw new IllegalStateException("Command queue is closed");
+		}
+		boolean isInterrupted = false;
+		while (pending.size() >= MAX_IN_FLIGHT) {
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private CompletableFuture<Integer> track(int code, boolean isRead, Memory pData) {
+		if (code != 0) {
+			NativeBufferPool.shared().release(pData);
+			CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+			future.completeExceptionally(new Exception(USTCDAC.getErrorMsg(backend, code)));
+			return future;
+		}
+		Pending p = new Pending(dac.getFunctionCount(), isRead, pData);
+		pending.add(p);
+		lock.notifyAll();
+		return p.future;
+	}
+
+	private void poll() {
+		IntByReference pFlag = new IntByReference();
+		IntByReference pPosition = new IntByReference();
+		while (true) {
+			synchronized (lock) {
+				while (pending.isEmpty() && !isClosed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+			}
+			int id = dac.getId();
+			backend.WaitUntilFinished(id, POLL_MILLIS);
+			List<Pending> done = new ArrayList<Pending>();
+			List<Object> results = new ArrayList<Object>();
+			synchronized (lock) {
+				int code = backend.CheckFinished(id, pFlag);
+				if (code != 0) {
+					Exception e = new Exception(USTCDAC.getErrorMsg(backend, code));
+					for (Pending p : pending) {
+						done.add(p);
+						results.add(e);
+					}
+				} else if (pFlag.getValue() != 0) {
+					code = backend.CheckSuccessed(id, pFlag, pPosition);
+					boolean isSuccessed = code == 0 && pFlag.getValue() != 0;
+					long count = dac.getFunctionCount();
+					for (Pending p : pending) {
+						done.add(p);
+						if (!p.isRead && isSuccessed) {
+							results.add(0);
+							continue;
+						}
+						USTCDAC.ReturnPara ret = dac.getReturn((int) (count - p.number + 1));
+						if (ret.retState != 0) {
+							results.add(new Exception("DAC function " + p.number + " failed with state "
+									+ ret.retState));
+						} else {
+							results.add(ret.retData);
+						}
+					}
+					roundTrips++;
+				}
+				if (!done.isEmpty()) {
+					pending.clear();
+					lock.notifyAll();
+				}
+			}
+			for (int i = 0; i < done.size(); i++) {
+				NativeBufferPool.shared().release(done.get(i).pData);
+				Object result = results.get(i);
+				if (result instanceof Exception) {
+					done.get(i).future.completeExceptionally((Exception) result);
+				} else {
+					done.get(i).future.complete((Integer) result);
+				}
+			}
+		}
+	}
+}
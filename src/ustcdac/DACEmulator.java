@@ -0,0 +1,272 @@
+/**
+* @project USTCADDA
+* @title DACEmulator.java
+* @package ustcdac
+* @description A loopback DAC server speaking the NioDACBackend protocol
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @className DACEmulator
+ * @description Emulated DAC board for benchmarking the upload path without
+ *              hardware. It keeps the wave and seq memory of four channels and
+ *              a register file, answers AD9136 temperature registers, and counts
+ *              received functions and bytes. A return delay can be set to emulate
+ *              the board's processing time.
+ * @date 2026.10.17
+ */
+public class DACEmulator implements Runnable {
+	/**
+	 * @fields MEMORY_SIZE : Size of wave and seq memory of four channels.
+	 */
+	public static final int MEMORY_SIZE = 8 << 18;
+
+	private final ServerSocketChannel server;
+	private final ByteBuffer memory = ByteBuffer.allocateDirect(MEMORY_SIZE);
+	private final Map<Long, Integer> registers = new ConcurrentHashMap<Long, Integer>();
+	private final AtomicLong functionCount = new AtomicLong();
+	private final AtomicLong byteCount = new AtomicLong();
+	private volatile long returnDelay = 0;
+	private volatile boolean isRunning = true;
+
+	/**
+	 * Create an emulator listening on specified port of loopback address.
+	 *
+	 * @param port
+	 *            Serve port, 0 for any free port
+	 * @throws IOException
+	 *             Throw exception when binding failed
+	 */
+	public DACEmulator(int port) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("127.0.0.1", port));
+		// AD9136 temperature registers, about 30 degree.
+		registers.put(key(USTCDAC.READAD9136C1, 0x132), 0x20);
+		registers.put(key(USTCDAC.READAD9136C1, 0x133), 0x99);
+		registers.put(key(USTCDAC.READAD9136C2, 0x132), 0x20);
+		registers.put(key(USTCDAC.READAD9136C2, 0x133), 0x99);
+	}
+
+	/**
+	 * @title start
+	 * @description Start accepting connections on a daemon thread
+	 * @return This emulator
+	 */
+	public DACEmulator start() {
+		Thread thread = new Thread(this, "DACEmulator-" + getPort());
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * @title stop
+	 * @description Stop accepting connections
+	 */
+	public void stop() {
+		isRunning = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @title getPort
+	 * @description Get the port the emulator listens on
+	 * @return Port
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * @title setReturnDelay
+	 * @description Set delay before each return is sent
+	 * @param micros
+	 *            The unit is microsecond
+	 */
+	public void setReturnDelay(long micros) {
+		this.returnDelay = micros * 1000;
+	}
+
+	/**
+	 * @title getFunctionCount
+	 * @description Get count of received functions
+	 * @return Function count
+	 */
+	public long getFunctionCount() {
+		return functionCount.get();
+	}
+
+	/**
+	 * @title getByteCount
+	 * @description Get count of received bytes, headers included
+	 * @return Byte count
+	 */
+	public long getByteCount() {
+		return byteCount.get();
+	}
+
+	/**
+	 * @title readMemory
+	 * @description Read emulated memory directly, for checking uploads
+	 * @param start
+	 *            Start address
+	 * @param length
+	 *            Length in bytes
+	 * @return Copy of the memory
+	 */
+	public byte[] readMemory(int start, int length) {
+		byte[] data = new byte[length];
+		ByteBuffer view = memory.duplicate();
+		view.position(start);
+		view.get(data);
+		return data;
+	}
+
+	@Override
+	public void run() {
+		while (isRunning) {
+			try {
+				final SocketChannel client = server.accept();
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(client);
+					}
+				}, "DACEmulator-client");
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (isRunning) {
+					e.printStackTrace();
+				}
+				return;
+			}
+		}
+	}
+
+	private void serve(SocketChannel client) {
+		ByteBuffer header = ByteBuffer.allocateDirect(NioDACBackend.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+		ByteBuffer ret = ByteBuffer.allocateDirect(NioDACBackend.RETURN_SIZE).order(ByteOrder.BIG_ENDIAN);
+		try {
+			client.socket().setTcpNoDelay(true);
+			while (isRunning) {
+				header.clear();
+				readFully(client, header);
+				header.flip();
+				int funcType = header.getInt();
+				int instruction = header.getInt();
+				int para1 = header.getInt();
+				int para2 = header.getInt();
+				functionCount.incrementAndGet();
+				byteCount.addAndGet(NioDACBackend.HEADER_SIZE);
+				int retState = 0;
+				int retData = 0;
+				ByteBuffer data = null;
+				if (funcType == NioDACBackend.FUNC_WRITEMEM || funcType == NioDACBackend.FUNC_READMEM) {
+					ByteBuffer view = memory.duplicate();
+					if (para1 < 0 || para2 < 0 || para1 + para2 > MEMORY_SIZE) {
+						retState = 1;
+						view.limit(0);
+					} else {
+						view.limit(para1 + para2).position(para1);
+					}
+					if (funcType == NioDACBackend.FUNC_WRITEMEM) {
+						byteCount.addAndGet(para2);
+						if (retState == 0) {
+							readFully(client, view);
+						} else {
+							skip(client, para2);
+						}
+					} else if (retState == 0) {
+						data = view;
+					}
+				} else {
+					retData = execute(instruction, para1, para2);
+				}
+				if (returnDelay > 0) {
+					LockSupport.parkNanos(returnDelay);
+				}
+				ret.clear();
+				ret.putInt(retState).putInt(retData).putInt(data == null ? 0 : data.remaining());
+				ret.flip();
+				while (ret.hasRemaining()) {
+					client.write(ret);
+				}
+				while (data != null && data.hasRemaining()) {
+					client.write(data);
+				}
+			}
+		} catch (IOException e) {
+			// Client closed.
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private int execute(int instruction, int para1, int para2) {
+		if (instruction == USTCDAC.READAD9136C1 || instruction == USTCDAC.READAD9136C2) {
+			Integer value = registers.get(key(instruction, para1));
+			return value == null ? 0 : value;
+		}
+		// USTCDAC encodes board registers as bank << 8 + 2 and bank << 8 + 1,
+		// which are bank << 10 for a write and bank << 9 for a read. The write
+		// of bank b and the read of bank 2b share a code, the data tells them
+		// apart: a read carries 0, so a write of 0 is taken as a read.
+		if ((instruction & 0x1ff) != 0) {
+			return 0;
+		}
+		if ((instruction & 0x3ff) == 0 && para2 != 0) {
+			registers.put(key(instruction >>> 10, para1), para2);
+			return 0;
+		}
+		Integer value = registers.get(key(instruction >>> 9, para1));
+		return value == null ? 0 : value;
+	}
+
+	private static long key(int space, int addr) {
+		return ((long) space << 32) | (addr & 0xffffffffL);
+	}
+
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static void skip(SocketChannel channel, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, 65536));
+		while (length > 0) {
+			int size = Math.min(length, buffer.capacity());
+			buffer.clear();
+			buffer.limit(size);
+			readFully(channel, buffer);
+			length -= size;
+		}
+	}
+}
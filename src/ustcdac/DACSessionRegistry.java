@@ -0,0 +1,352 @@
+/**
+* @project USTCADDA
+* @title DACSessionRegistry.java
+* @package ustcdac
+* @description Shared and reference counted DAC connections
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className DACSessionRegistry
+ * @description Hand out opened USTCDAC by ip:port. A session is opened on the
+ *              first acquire and shared by later ones, each close of a Session
+ *              releases one reference. A session without references stays open
+ *              for the idle timeout, so short jobs find a warm connection, and
+ *              while idle it is probed in background by reading an AD9136
+ *              register, a session failing the probe is closed and opened again
+ *              on next acquire. Sessions in use are never probed, users sharing
+ *              one session from several threads must synchronize on its DAC.
+ * @date 2026.10.17
+ */
+public class DACSessionRegistry implements AutoCloseable {
+	/**
+	 * @className Session
+	 * @description One reference to a shared DAC connection.
+	 */
+	public static class Session implements AutoCloseable {
+		private final Entry entry;
+		private boolean isClosed;
+
+		Session(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * @title getDAC
+		 * @description Get the opened DAC
+		 * @return The DAC
+		 */
+		public USTCDAC getDAC() {
+			return entry.dac;
+		}
+
+		/**
+		 * @title getKey
+		 * @description Get key of the session
+		 * @return ip:port
+		 */
+		public String getKey() {
+			return entry.key;
+		}
+
+		/**
+		 * @title close
+		 * @description Release this reference, the DAC must not be used after
+		 */
+		@Override
+		public void close() {
+			synchronized (this) {
+				if (isClosed) {
+					return;
+				}
+				isClosed = true;
+			}
+			entry.registry.release(entry);
+		}
+	}
+
+	/**
+	 * @className Entry
+	 * @description State of one shared connection.
+	 */
+	static class Entry {
+		final DACSessionRegistry registry;
+		final String key;
+		final USTCDAC dac;
+		int references;
+		long idleSince;
+		boolean isProbing;
+
+		Entry(DACSessionRegistry registry, String key, USTCDAC dac) {
+			this.registry = registry;
+			this.key = key;
+			this.dac = dac;
+		}
+	}
+
+	private static class Holder {
+		static final DACSessionRegistry SHARED = new DACSessionRegistry(CDACLib.INSTANCE);
+	}
+
+	private final DACBackend backend;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final ScheduledExecutorService maintainer;
+	private ScheduledFuture<?> maintenance;
+	private long idleTimeout = 60000;
+	private long probeInterval = 10000;
+	private long opens;
+	private long reuses;
+	private long probes;
+	private long probeFailures;
+
+	/**
+	 * Create a registry on specified backend.
+	 *
+	 * @param backend
+	 *            The driver backend of all sessions
+	 */
+	public DACSessionRegistry(DACBackend backend) {
+		this.backend = backend;
+		this.maintainer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DACSessionRegistry");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		schedule();
+	}
+
+	/**
+	 * @title shared
+	 * @description Get the registry of the process on the dll backend
+	 * @return The shared registry
+	 */
+	public static DACSessionRegistry shared() {
+		return Holder.SHARED;
+	}
+
+	/**
+	 * @title acquire
+	 * @description Get a session of DAC on port 80
+	 * @param ip
+	 *            DAC ip address
+	 * @return The session, close it when done
+	 */
+	public Session acquire(String ip) {
+		return acquire(ip, (short) 80);
+	}
+
+	/**
+	 * @title acquire
+	 * @description Get a session of DAC, opening it if there is none
+	 * @param ip
+	 *            DAC ip address
+	 * @param port
+	 *            DAC serve port
+	 * @return The session, close it when done
+	 * @throws IllegalStateException
+	 *             Throw exception when the DAC can not be opened
+	 */
+	public Session acquire(String ip, short port) {
+		String key = ip + ":" + (port & 0xffff);
+		while (true) {
+			synchronized (this) {
+				Entry entry = entries.get(key);
+				while (entry != null && entry.isProbing) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Interrupted while " + key + " is probed");
+					}
+					entry = entries.get(key);
+				}
+				if (entry != null) {
+					entry.references++;
+					reuses++;
+					return new Session(entry);
+				}
+			}
+			USTCDAC dac = new USTCDAC(ip, port, backend);
+			dac.clearLastError();
+			dac.openDAC();
+			if (dac.getLastError() != 0) {
+				throw new IllegalStateException("Can not open " + key + ": "
+						+ USTCDAC.getErrorMsg(backend, dac.getLastError()));
+			}
+			synchronized (this) {
+				if (!entries.containsKey(key)) {
+					Entry entry = new Entry(this, key, dac);
+					entry.references = 1;
+					entries.put(key, entry);
+					opens++;
+					return new Session(entry);
+				}
+			}
+			dac.closeDAC();
+		}
+	}
+
+	/**
+	 * @title setIdleTimeout
+	 * @description Set time a session without references stays open
+	 * @param millis
+	 *            The unit is millisecond
+	 */
+	public synchronized void setIdleTimeout(long millis) {
+		this.idleTimeout = millis;
+	}
+
+	/**
+	 * @title setProbeInterval
+	 * @description Set interval of background probes and idle checks
+	 * @param millis
+	 *            The unit is millisecond
+	 */
+	public synchronized void setProbeInterval(long millis) {
+		this.probeInterval = millis;
+		schedule();
+	}
+
+	/**
+	 * @title getOpenCount
+	 * @description Get count of sessions open now
+	 * @return Session count
+	 */
+	public synchronized int getOpenCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @title getStats
+	 * @description Get statistics of the registry
+	 * @return {opens, reuses, probes, probe failures}
+	 */
+	public synchronized long[] getStats() {
+		return new long[] { opens, reuses, probes, probeFailures };
+	}
+
+	/**
+	 * @title close
+	 * @description Close every session and stop background probes
+	 */
+	@Override
+	public void close() {
+		maintainer.shutdownNow();
+		List<Entry> list;
+		synchronized (this) {
+			list = new ArrayList<Entry>(entries.values());
+			entries.clear();
+		}
+		for (Entry entry : list) {
+			entry.dac.closeDAC();
+		}
+	}
+
+	private void release(Entry entry) {
+		synchronized (this) {
+			if (--entry.references > 0) {
+				return;
+			}
+			entry.idleSince = System.nanoTime();
+			if (idleTimeout > 0 || entries.get(entry.key) != entry) {
+				return;
+			}
+			entries.remove(entry.key);
+		}
+		entry.dac.closeDAC();
+	}
+
+	private synchronized void schedule() {
+		if (maintenance != null) {
+			maintenance.cancel(false);
+		}
+		maintenance = maintainer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					maintain();
+				} catch (Throwable e) {
+					// An escaped throwable would cancel the schedule.
+					e.printStackTrace();
+				}
+			}
+		}, probeInterval, probeInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @title maintain
+	 * @description Close sessions idle for too long and probe the others
+	 */
+	void maintain() {
+		List<Entry> expired = new ArrayList<Entry>();
+		List<Entry> idle = new ArrayList<Entry>();
+		synchronized (this) {
+			long now = System.nanoTime();
+			for (Entry entry : new ArrayList<Entry>(entries.values())) {
+				if (entry.references > 0) {
+					continue;
+				}
+				if (now - entry.idleSince >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+					entries.remove(entry.key);
+					expired.add(entry);
+				} else {
+					entry.isProbing = true;
+					idle.add(entry);
+				}
+			}
+		}
+		try {
+			for (Entry entry : expired) {
+				entry.dac.closeDAC();
+			}
+			for (Entry entry : idle) {
+				boolean isAlive = false;
+				try {
+					entry.dac.clearLastError();
+					entry.dac.getRegisterShadow().invalidate(RegisterShadow.AD9136, 1, 0x132);
+					entry.dac.readAD9136(1, 0x132);
+					isAlive = entry.dac.getLastError() == 0;
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				} finally {
+					synchronized (this) {
+						probes++;
+						entry.isProbing = false;
+						if (!isAlive) {
+							probeFailures++;
+							entries.remove(entry.key);
+						}
+						notifyAll();
+					}
+				}
+				if (!isAlive) {
+					entry.dac.closeDAC();
+				}
+			}
+		} finally {
+			synchronized (this) {
+				for (Entry entry : idle) {
+					entry.isProbing = false;
+				}
+				notifyAll();
+			}
+		}
+	}
+}
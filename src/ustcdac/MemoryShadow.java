@@ -0,0 +1,214 @@
+/**
+* @project USTCADDA
+* @title MemoryShadow.java
+* @package ustcdac
+* @description Host side copy of the wave and seq memory of a DAC board
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.sun.jna.Pointer;
+
+/**
+ * @className MemoryShadow
+ * @description Copy of what was written to the memory of one board, laid out
+ *              by start address, with the wave region of channel ch at
+ *              ((ch << 1) - 2) << 18 and its seq region right after. The
+ *              memory is split in blocks of 8 wave samples, a block is known
+ *              once a write covering it fully returned success. A write not
+ *              confirmed, as any write in unblock mode, makes its blocks
+ *              unknown, so they are sent whole next time. A new upload is
+ *              compared with the copy block by block, and the dirty blocks
+ *              are merged into ranges when the clean gap between them is no
+ *              longer than COALESCE_GAP, since each range costs one memory
+ *              function. When there are more than MAX_RANGES ranges, or their
+ *              bytes plus ROUND_TRIP_BYTES per extra function are no fewer
+ *              than the whole upload, the whole upload is one range.
+ * @date 2026.10.17
+ */
+class MemoryShadow {
+	/**
+	 * @fields BLOCK_SIZE : Size of a block in bytes, 8 wave samples
+	 */
+	static final int BLOCK_SIZE = 16;
+	/**
+	 * @fields MEMORY_SIZE : Size of wave and seq memory of 4 channels in bytes
+	 */
+	static final int MEMORY_SIZE = 8 << 18;
+	/**
+	 * @fields COALESCE_GAP : Clean bytes between two dirty ranges below which
+	 *         they are sent as one
+	 */
+	static final int COALESCE_GAP = 64;
+	/**
+	 * @fields MAX_RANGES : Ranges above which the whole upload is sent
+	 */
+	static final int MAX_RANGES = 8;
+	/**
+	 * @fields ROUND_TRIP_BYTES : Bytes sent in the time of one more memory
+	 *         function, about 65 us on gigabit Ethernet
+	 */
+	static final int ROUND_TRIP_BYTES = 8192;
+
+	private final byte[] image = new byte[MEMORY_SIZE];
+	private final ByteBuffer view = ByteBuffer.wrap(image).order(ByteOrder.nativeOrder());
+	private final long[] known = new long[MEMORY_SIZE / BLOCK_SIZE / 64];
+	private long bytesSent;
+	private long bytesSkipped;
+
+	/**
+	 * @title covers
+	 * @description Check whether a range lies in the shadowed memory
+	 */
+	boolean covers(int startAddr, int length) {
+		return startAddr >= 0 && length >= 0 && (long) startAddr + length <= MEMORY_SIZE;
+	}
+
+	/**
+	 * @title diff
+	 * @description Compare data to be written with the copy
+	 * @param startAddr
+	 *            Start address of the data
+	 * @param data
+	 *            The formatted data
+	 * @param length
+	 *            Length of data in bytes
+	 * @return {offset, length} pairs of dirty ranges, offsets counted from
+	 *         startAddr, or {0, length} when writing the ranges would cost
+	 *         more than one whole write
+	 */
+	int[] diff(int startAddr, Pointer data, int length) {
+		ByteBuffer src = data.getByteBuffer(0, length).order(ByteOrder.nativeOrder());
+		int end = startAddr + length;
+		int[] ranges = new int[8];
+		int count = 0;
+		int rangeStart = -1;
+		int rangeEnd = -1;
+		for (int block = startAddr & -BLOCK_SIZE; block < end; block += BLOCK_SIZE) {
+			int lo = Math.max(block, startAddr);
+			int hi = Math.min(block + BLOCK_SIZE, end);
+			if (!isDirty(block, lo, hi, src, startAddr)) {
+				continue;
+			}
+			if (rangeEnd >= 0 && lo - rangeEnd <= COALESCE_GAP) {
+				rangeEnd = hi;
+				continue;
+			}
+			if (rangeEnd >= 0) {
+				if (count == ranges.length) {
+					ranges = Arrays.copyOf(ranges, count * 2);
+				}
+				ranges[count++] = rangeStart - startAddr;
+				ranges[count++] = rangeEnd - rangeStart;
+			}
+			rangeStart = lo;
+			rangeEnd = hi;
+		}
+		if (rangeEnd >= 0) {
+			if (count == ranges.length) {
+				ranges = Arrays.copyOf(ranges, count + 2);
+			}
+			ranges[count++] = rangeStart - startAddr;
+			ranges[count++] = rangeEnd - rangeStart;
+		}
+		int dirty = 0;
+		for (int i = 1; i < count; i += 2) {
+			dirty += ranges[i];
+		}
+		int rangeCount = count >> 1;
+		if (rangeCount > MAX_RANGES
+				|| (rangeCount > 1 && dirty + (long) (rangeCount - 1) * ROUND_TRIP_BYTES >= length)) {
+			return new int[] { 0, length };
+		}
+		bytesSkipped += length - dirty;
+		return count == ranges.length ? ranges : Arrays.copyOf(ranges, count);
+	}
+
+	/**
+	 * @title update
+	 * @description Record the result of writing a range
+	 * @param startAddr
+	 *            Start address of the range
+	 * @param data
+	 *            The data written
+	 * @param length
+	 *            Length of the range in bytes
+	 * @param isWritten
+	 *            True if the return of the write confirmed success, else the
+	 *            range becomes unknown
+	 */
+	void update(int startAddr, Pointer data, int length, boolean isWritten) {
+		if (!covers(startAddr, length)) {
+			return;
+		}
+		int end = startAddr + length;
+		if (!isWritten) {
+			for (int block = startAddr & -BLOCK_SIZE; block < end; block += BLOCK_SIZE) {
+				setKnown(block, false);
+			}
+			return;
+		}
+		data.read(0, image, startAddr, length);
+		for (int block = (startAddr + BLOCK_SIZE - 1) & -BLOCK_SIZE; block + BLOCK_SIZE <= end; block += BLOCK_SIZE) {
+			setKnown(block, true);
+		}
+		bytesSent += length;
+	}
+
+	/**
+	 * @title clear
+	 * @description Forget the whole memory
+	 */
+	void clear() {
+		Arrays.fill(known, 0);
+	}
+
+	/**
+	 * @title getBytesSent
+	 * @description Get bytes written through the shadow
+	 */
+	long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @title getBytesSkipped
+	 * @description Get bytes found clean by diff and not sent
+	 */
+	long getBytesSkipped() {
+		return bytesSkipped;
+	}
+
+	private boolean isDirty(int block, int lo, int hi, ByteBuffer src, int startAddr) {
+		int index = block / BLOCK_SIZE;
+		if ((known[index >> 6] & (1L << index)) == 0) {
+			return true;
+		}
+		if (hi - lo == BLOCK_SIZE) {
+			return view.getLong(block) != src.getLong(block - startAddr)
+					|| view.getLong(block + 8) != src.getLong(block + 8 - startAddr);
+		}
+		for (int addr = lo; addr < hi; addr++) {
+			if (image[addr] != src.get(addr - startAddr)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void setKnown(int block, boolean isKnown) {
+		int index = block / BLOCK_SIZE;
+		if (isKnown) {
+			known[index >> 6] |= 1L << index;
+		} else {
+			known[index >> 6] &= ~(1L << index);
+		}
+	}
+}
@@ -0,0 +1,453 @@
+/**
+* @project USTCADDA
+* @title NioDACBackend.java
+* @package ustcdac
+* @description A pure Java DAC backend on NIO socket channel
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * @className NioDACBackend
+ * @description DAC backend implemented in Java for DACEmulator. It speaks a
+ *              protocol of its own, only DACEmulator implements it and it
+ *              cannot talk to a real board, which needs CDACLib. Each function
+ *              is sent as a 16 bytes header {funcType, instruction, para1,
+ *              para2} in network byte order, a memory write is followed by its
+ *              data, and the header and data go out in one gathering write. The
+ *              emulator answers every function in order with a 12 bytes return
+ *              {retState, retData, length} followed by length bytes. Functions
+ *              are sent at once and answered by a reader thread, so GetReturn
+ *              only waits for the function it asks for.
+ * @date 2026.10.17
+ */
+public class NioDACBackend implements DACBackend {
+	/**
+	 * @fields ERR_INVALID_ID : Error code of unopened ID.
+	 */
+	public static final int ERR_INVALID_ID = 1;
+	/**
+	 * @fields ERR_CONNECT : Error code of connection failure.
+	 */
+	public static final int ERR_CONNECT = 2;
+	/**
+	 * @fields ERR_IO : Error code of broken connection.
+	 */
+	public static final int ERR_IO = 3;
+	/**
+	 * @fields ERR_TIMEOUT : Error code of receiving timeout.
+	 */
+	public static final int ERR_TIMEOUT = 4;
+	/**
+	 * @fields ERR_BAD_OFFSET : Error code of offset out of the function stack.
+	 */
+	public static final int ERR_BAD_OFFSET = 5;
+
+	static final int FUNC_INSTRUCTION = 1;
+	static final int FUNC_WRITEMEM = 2;
+	static final int FUNC_READMEM = 3;
+	static final int HEADER_SIZE = 16;
+	static final int RETURN_SIZE = 12;
+	/**
+	 * @fields MAX_DATA : Largest data of a return, the whole wave and seq
+	 *         memory
+	 */
+	static final int MAX_DATA = 8 << 18;
+	static final int STACK_SIZE = 4096;
+
+	/**
+	 * @className Function
+	 * @description One function in the function stack.
+	 */
+	static class Function {
+		int funcType;
+		int instruction;
+		int para1;
+		int para2;
+		int retState = -1;
+		int retData;
+		byte[] data;
+		boolean isDone;
+	}
+
+	/**
+	 * @className Connection
+	 * @description Connection to one DAC with its function stack.
+	 */
+	static class Connection implements Runnable {
+		final SocketChannel channel;
+		final Object sendLock = new Object();
+		final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+		final ByteBuffer[] gather = new ByteBuffer[2];
+		final Function[] stack = new Function[STACK_SIZE];
+		final ArrayDeque<Function> pending = new ArrayDeque<Function>();
+		long count;
+		long failedIndex = -1;
+		long recvTimeout = 5000;
+		boolean isBroken;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		int send(int funcType, int instruction, int para1, int para2, ByteBuffer data) {
+			Function func = new Function();
+			func.funcType = funcType;
+			func.instruction = instruction;
+			func.para1 = para1;
+			func.para2 = para2;
+			synchronized (sendLock) {
+				synchronized (this) {
+					if (isBroken) {
+						return ERR_IO;
+					}
+					stack[(int) (count % STACK_SIZE)] = func;
+					count++;
+					pending.addLast(func);
+				}
+				header.clear();
+				header.putInt(funcType).putInt(instruction).putInt(para1).putInt(para2);
+				header.flip();
+				try {
+					if (data == null) {
+						while (header.hasRemaining()) {
+							channel.write(header);
+						}
+					} else {
+						gather[0] = header;
+						gather[1] = data;
+						while (header.hasRemaining() || data.hasRemaining()) {
+							channel.write(gather);
+						}
+						gather[1] = null;
+					}
+				} catch (IOException e) {
+					fail();
+					return ERR_IO;
+				}
+			}
+			return 0;
+		}
+
+		synchronized Function get(int offset) {
+			if (offset < 1 || offset > count || offset > STACK_SIZE) {
+				return null;
+			}
+			return stack[(int) ((count - offset) % STACK_SIZE)];
+		}
+
+		synchronized int await(Function func) {
+			long deadline = System.currentTimeMillis() + recvTimeout;
+			while (!func.isDone) {
+				if (isBroken) {
+					return ERR_IO;
+				}
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					return ERR_TIMEOUT;
+				}
+				try {
+					wait(left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return ERR_TIMEOUT;
+				}
+			}
+			return 0;
+		}
+
+		synchronized int awaitAll(long time) {
+			long deadline = System.currentTimeMillis() + time;
+			while (!pending.isEmpty()) {
+				if (isBroken) {
+					return ERR_IO;
+				}
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					return ERR_TIMEOUT;
+				}
+				try {
+					wait(left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return ERR_TIMEOUT;
+				}
+			}
+			return 0;
+		}
+
+		synchronized void fail() {
+			isBroken = true;
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer ret = ByteBuffer.allocateDirect(RETURN_SIZE).order(ByteOrder.BIG_ENDIAN);
+			try {
+				while (true) {
+					ret.clear();
+					readFully(ret);
+					ret.flip();
+					int retState = ret.getInt();
+					int retData = ret.getInt();
+					int length = ret.getInt();
+					if (length < 0 || length > MAX_DATA) {
+						throw new IOException("Return of " + length + " bytes");
+					}
+					byte[] data = null;
+					if (length > 0) {
+						data = new byte[length];
+						readFully(ByteBuffer.wrap(data));
+					}
+					synchronized (this) {
+						Function func = pending.pollFirst();
+						if (func == null) {
+							continue;
+						}
+						func.retState = retState;
+						func.retData = retData;
+						func.data = data;
+						func.isDone = true;
+						if (retState != 0) {
+							failedIndex = count - pending.size() - 1;
+						}
+						notifyAll();
+					}
+				}
+			} catch (IOException e) {
+				fail();
+			}
+		}
+
+		private void readFully(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException();
+				}
+			}
+		}
+	}
+
+	private final Map<Integer, Connection> connections = new ConcurrentHashMap<Integer, Connection>();
+	private final AtomicInteger nextID = new AtomicInteger(1);
+
+	@Override
+	public int OpenDAC(IntByReference pID, String ip, short port) {
+		SocketChannel channel;
+		try {
+			channel = SocketChannel.open(new InetSocketAddress(ip, port & 0xffff));
+		} catch (IOException e) {
+			return ERR_CONNECT;
+		}
+		try {
+			channel.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException closing) {
+				// Already failed to connect.
+			}
+			return ERR_CONNECT;
+		}
+		Connection connection = new Connection(channel);
+		int id = nextID.getAndIncrement();
+		connections.put(id, connection);
+		Thread reader = new Thread(connection, "NioDACBackend-" + ip + "-" + id);
+		reader.setDaemon(true);
+		reader.start();
+		pID.setValue(id);
+		return 0;
+	}
+
+	@Override
+	public int CloseDAC(int id) {
+		Connection connection = connections.remove(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			return ERR_IO;
+		} finally {
+			connection.fail();
+		}
+		return 0;
+	}
+
+	@Override
+	public int WriteInstruction(int id, int instruction, int para1, int para2) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		return connection.send(FUNC_INSTRUCTION, instruction, para1, para2, null);
+	}
+
+	@Override
+	public int WriteMemory(int id, int instruction, int start, int length, Pointer pData) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		return connection.send(FUNC_WRITEMEM, instruction, start, length, pData.getByteBuffer(0, length));
+	}
+
+	@Override
+	public int ReadMemory(int id, int instruction, int start, int length) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		return connection.send(FUNC_READMEM, instruction, start, length, null);
+	}
+
+	@Override
+	public int SetTimeOut(int id, int direction, float time) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		if (direction == 0) {
+			synchronized (connection) {
+				connection.recvTimeout = (long) (time * 1000);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int GetFunctionType(int id, int offset, IntByReference pFuncType, IntByReference pInstruction,
+			IntByReference pPara1, IntByReference pPara2) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		Function func = connection.get(offset);
+		if (func == null) {
+			return ERR_BAD_OFFSET;
+		}
+		pFuncType.setValue(func.funcType);
+		pInstruction.setValue(func.instruction);
+		pPara1.setValue(func.para1);
+		pPara2.setValue(func.para2);
+		return 0;
+	}
+
+	@Override
+	public int GetReturn(int id, int offset, IntByReference pRetStat, IntByReference pRetData, Pointer pData) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		Function func = connection.get(offset);
+		if (func == null) {
+			return ERR_BAD_OFFSET;
+		}
+		int code = connection.await(func);
+		if (code != 0) {
+			return code;
+		}
+		if (func.data != null && func.data.length > 0 && func.funcType != FUNC_READMEM) {
+			// Only a memory read is answered with data.
+			return ERR_IO;
+		}
+		pRetStat.setValue(func.retState);
+		pRetData.setValue(func.retData);
+		if (pData != null && func.data != null) {
+			// The caller allocated para2 bytes, never trust the peer's length.
+			pData.write(0, func.data, 0, Math.min(func.data.length, func.para2));
+		}
+		return 0;
+	}
+
+	@Override
+	public int CheckFinished(int id, IntByReference pIsFinised) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		synchronized (connection) {
+			pIsFinised.setValue(connection.pending.isEmpty() ? 1 : 0);
+			return connection.isBroken ? ERR_IO : 0;
+		}
+	}
+
+	@Override
+	public int WaitUntilFinished(int id, int time) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		return connection.awaitAll(time);
+	}
+
+	@Override
+	public int GetSoftInformation(Pointer info) {
+		info.setString(0, "USTCDAC NIO backend V1.0");
+		return 0;
+	}
+
+	@Override
+	public int CheckSuccessed(int id, IntByReference pIsSuccessed, IntByReference pPostion) {
+		Connection connection = connections.get(id);
+		if (connection == null) {
+			return ERR_INVALID_ID;
+		}
+		synchronized (connection) {
+			if (connection.failedIndex < 0) {
+				pIsSuccessed.setValue(1);
+				pPostion.setValue(0);
+			} else {
+				pIsSuccessed.setValue(0);
+				pPostion.setValue((int) (connection.count - connection.failedIndex));
+				connection.failedIndex = -1;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int GetErrorMsg(int errorCode, Pointer pMsg) {
+		String msg;
+		switch (errorCode) {
+		case ERR_INVALID_ID:
+			msg = "DAC is not open";
+			break;
+		case ERR_CONNECT:
+			msg = "Can not connect to DAC";
+			break;
+		case ERR_IO:
+			msg = "Connection to DAC is broken";
+			break;
+		case ERR_TIMEOUT:
+			msg = "Wait for DAC return timeout";
+			break;
+		case ERR_BAD_OFFSET:
+			msg = "Offset is out of function stack";
+			break;
+		default:
+			msg = "Unknown error " + errorCode;
+		}
+		pMsg.setString(0, msg);
+		return 0;
+	}
+}
@@ -0,0 +1,219 @@
+/**
+* @project USTCADDA
+* @title Pulse.java
+* @package ustcdac
+* @description Shape parameters of one DAC pulse
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+/**
+ * @className Pulse
+ * @description An envelope sampled at the DAC sample rate. Times are given in
+ *              seconds, lengths are rounded to samples. Equal pulses share one
+ *              cache entry of PulseLibrary. Amplitude is a fraction of full
+ *              scale, -1~1.
+ * @date 2026.10.17
+ */
+public final class Pulse {
+	/**
+	 * @className Shape
+	 * @description Envelope of a pulse.
+	 */
+	public enum Shape {
+		/**
+		 * Gaussian lifted so the first and last samples are 0
+		 */
+		GAUSSIAN,
+		/**
+		 * DRAG quadrature, beta times the time derivative of GAUSSIAN, played
+		 * on the Q channel next to a GAUSSIAN on I
+		 */
+		DRAG,
+		/**
+		 * Raised cosine over the whole length
+		 */
+		COSINE,
+		/**
+		 * Flat top with raised cosine ramps at both ends
+		 */
+		FLAT_TOP
+	}
+
+	/**
+	 * @fields SAMPLE_RATE : Sample rate of USTCDAC
+	 */
+	public static final double SAMPLE_RATE = 2e9;
+
+	private final Shape shape;
+	private final int length;
+	private final double amplitude;
+	private final double sigma;
+	private final double beta;
+	private final int ramp;
+
+	Pulse(Shape shape, int length, double amplitude, double sigma, double beta, int ramp) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("Pulse must be at least one sample long");
+		}
+		if ((shape == Shape.GAUSSIAN || shape == Shape.DRAG) && !(sigma > 0)) {
+			throw new IllegalArgumentException("Sigma must be positive");
+		}
+		if (Math.abs(amplitude) > 1) {
+			throw new IllegalArgumentException("Amplitude " + amplitude + " is out of -1~1");
+		}
+		this.shape = shape;
+		this.length = length;
+		this.amplitude = amplitude;
+		this.sigma = sigma;
+		this.beta = beta;
+		this.ramp = ramp;
+	}
+
+	/**
+	 * @title gaussian
+	 * @description Create a Gaussian pulse
+	 * @param duration
+	 *            Length in seconds
+	 * @param sigma
+	 *            Standard deviation in seconds
+	 * @param amplitude
+	 *            Peak, fraction of full scale
+	 * @return The pulse
+	 */
+	public static Pulse gaussian(double duration, double sigma, double amplitude) {
+		return new Pulse(Shape.GAUSSIAN, samples(duration), amplitude, sigma * SAMPLE_RATE, 0, 0);
+	}
+
+	/**
+	 * @title drag
+	 * @description Create the DRAG quadrature of a Gaussian pulse
+	 * @param duration
+	 *            Length in seconds
+	 * @param sigma
+	 *            Standard deviation in seconds
+	 * @param beta
+	 *            DRAG coefficient in seconds
+	 * @param amplitude
+	 *            Peak of the Gaussian, fraction of full scale
+	 * @return The pulse
+	 */
+	public static Pulse drag(double duration, double sigma, double beta, double amplitude) {
+		return new Pulse(Shape.DRAG, samples(duration), amplitude, sigma * SAMPLE_RATE, beta * SAMPLE_RATE, 0);
+	}
+
+	/**
+	 * @title cosine
+	 * @description Create a raised cosine pulse
+	 * @param duration
+	 *            Length in seconds
+	 * @param amplitude
+	 *            Peak, fraction of full scale
+	 * @return The pulse
+	 */
+	public static Pulse cosine(double duration, double amplitude) {
+		return new Pulse(Shape.COSINE, samples(duration), amplitude, 0, 0, 0);
+	}
+
+	/**
+	 * @title flatTop
+	 * @description Create a flat top pulse
+	 * @param duration
+	 *            Length in seconds, ramps included
+	 * @param ramp
+	 *            Length of each ramp in seconds
+	 * @param amplitude
+	 *            Level of the top, fraction of full scale
+	 * @return The pulse
+	 */
+	public static Pulse flatTop(double duration, double ramp, double amplitude) {
+		int length = samples(duration);
+		return new Pulse(Shape.FLAT_TOP, length, amplitude, 0, 0, Math.min(samples(ramp), length / 2));
+	}
+
+	/**
+	 * @title value
+	 * @description Get the envelope at a sample, amplitude included
+	 */
+	double value(int n) {
+		double c = (length - 1) / 2.0;
+		switch (shape) {
+		case GAUSSIAN:
+		case DRAG: {
+			double s2 = sigma * sigma;
+			double lift = Math.exp(-c * c / (2 * s2));
+			double x = n - c;
+			double g = Math.exp(-x * x / (2 * s2));
+			if (shape == Shape.GAUSSIAN) {
+				return amplitude * (g - lift) / (1 - lift);
+			}
+			return amplitude * beta * -x / s2 * g / (1 - lift);
+		}
+		case COSINE:
+			return amplitude * (1 - Math.cos(2 * Math.PI * (n + 0.5) / length)) / 2;
+		default:
+			int edge = Math.min(n, length - 1 - n);
+			if (edge >= ramp) {
+				return amplitude;
+			}
+			return amplitude * (1 - Math.cos(Math.PI * (edge + 0.5) / ramp)) / 2;
+		}
+	}
+
+	/**
+	 * @title getShape
+	 * @description Get envelope of the pulse
+	 * @return shape
+	 */
+	public Shape getShape() {
+		return shape;
+	}
+
+	/**
+	 * @title getLength
+	 * @description Get length of the pulse
+	 * @return Length in samples
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @title getAmplitude
+	 * @description Get amplitude of the pulse
+	 * @return Fraction of full scale
+	 */
+	public double getAmplitude() {
+		return amplitude;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Pulse)) {
+			return false;
+		}
+		Pulse other = (Pulse) obj;
+		return shape == other.shape && length == other.length && Double.compare(amplitude, other.amplitude) == 0
+				&& Double.compare(sigma, other.sigma) == 0 && Double.compare(beta, other.beta) == 0
+				&& ramp == other.ramp;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(amplitude) * 31 + Double.doubleToLongBits(sigma) * 17
+				+ Double.doubleToLongBits(beta);
+		return ((shape.ordinal() * 31 + length) * 31 + ramp) * 31 + (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Pulse[%s, %d samples, amplitude %g]", shape, length, amplitude);
+	}
+
+	private static int samples(double time) {
+		return (int) Math.round(time * SAMPLE_RATE);
+	}
+}
@@ -0,0 +1,206 @@
+/**
+* @project USTCADDA
+* @title PulseLibrary.java
+* @package ustcdac
+* @description Cache of quantized pulse waves keyed by shape parameters
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ustcadda.OffHeapCache;
+
+/**
+ * @className PulseLibrary
+ * @description Pulses quantized to DAC codes, 0 at CENTER and full scale at
+ *              CENTER +- SCALE, clamped to 16 bits. Each pulse is computed once
+ *              and kept off heap in a bounded LRU cache, so a schedule reusing a
+ *              few shapes costs copies instead of transcendental functions.
+ *              Long pulses and the missing pulses of a schedule are computed
+ *              over the fork join pool.
+ * @date 2026.10.17
+ */
+public class PulseLibrary {
+	/**
+	 * @fields CENTER : DAC code of 0
+	 */
+	public static final int CENTER = 32768;
+	/**
+	 * @fields SCALE : DAC codes of full scale
+	 */
+	public static final int SCALE = 32767;
+	/**
+	 * @fields PARALLEL_SIZE : Samples of a pulse above which it is computed
+	 *         over the pool
+	 */
+	static final int PARALLEL_SIZE = 1 << 15;
+
+	private static final PulseLibrary SHARED = new PulseLibrary(64L << 20);
+
+	private static final OffHeapCache.Builder<Pulse> BUILDER = new OffHeapCache.Builder<Pulse>() {
+		@Override
+		public void build(Pulse pulse, ByteBuffer buffer) {
+			ShortBuffer codes = buffer.asShortBuffer();
+			if (pulse.getLength() <= PARALLEL_SIZE || ForkJoinPool.getCommonPoolParallelism() < 2) {
+				quantize(pulse, codes, 0, pulse.getLength());
+			} else {
+				ForkJoinPool.commonPool().invoke(new QuantizeTask(pulse, codes, 0, pulse.getLength()));
+			}
+		}
+	};
+
+	private final OffHeapCache<Pulse> cache;
+
+	/**
+	 * Create a pulse library.
+	 *
+	 * @param maxBytes
+	 *            Maximum total bytes of cached pulses
+	 */
+	public PulseLibrary(long maxBytes) {
+		this.cache = new OffHeapCache<Pulse>(maxBytes);
+	}
+
+	/**
+	 * @title shared
+	 * @description Get the library shared by the process, 64MB at most
+	 * @return The shared library
+	 */
+	public static PulseLibrary shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @title get
+	 * @description Get the DAC codes of a pulse, computing them if missing
+	 * @param pulse
+	 *            The pulse
+	 * @return Read only view, one unsigned 16 bits code per sample
+	 */
+	public ShortBuffer get(Pulse pulse) {
+		return cache.get(pulse, 2 * pulse.getLength(), BUILDER).asShortBuffer();
+	}
+
+	/**
+	 * @title getWave
+	 * @description Get the DAC codes of a pulse as a wave for writeWave
+	 * @param pulse
+	 *            The pulse
+	 * @return A new array of the codes
+	 */
+	public int[] getWave(Pulse pulse) {
+		ShortBuffer codes = get(pulse);
+		int[] wave = new int[pulse.getLength()];
+		for (int i = 0; i < wave.length; i++) {
+			wave[i] = codes.get(i) & 0xffff;
+		}
+		return wave;
+	}
+
+	/**
+	 * @title prepare
+	 * @description Compute the missing pulses of a collection over the pool
+	 * @param pulses
+	 *            The pulses, duplicates are computed once
+	 */
+	public void prepare(Collection<Pulse> pulses) {
+		final List<Pulse> distinct = new ArrayList<Pulse>(new LinkedHashSet<Pulse>(pulses));
+		if (distinct.size() < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			for (Pulse pulse : distinct) {
+				get(pulse);
+			}
+			return;
+		}
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (final Pulse pulse : distinct) {
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					PulseLibrary.this.get(pulse);
+				}
+			});
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/**
+	 * @title getCache
+	 * @description Get the underlying cache for its statistics
+	 * @return cache
+	 */
+	public OffHeapCache<?> getCache() {
+		return cache;
+	}
+
+	/**
+	 * @title quantize
+	 * @description Get the DAC code of an envelope value
+	 * @param value
+	 *            Fraction of full scale
+	 * @return Code clamped to 0~65535
+	 */
+	public static int quantize(double value) {
+		long code = CENTER + Math.round(value * SCALE);
+		return (int) Math.max(0, Math.min(0xffff, code));
+	}
+
+	/**
+	 * @title quantize
+	 * @description Quantize samples [from, to) of a pulse
+	 */
+	static void quantize(Pulse pulse, ShortBuffer codes, int from, int to) {
+		for (int n = from; n < to; n++) {
+			codes.put(n, (short) quantize(pulse.value(n)));
+		}
+	}
+
+	/**
+	 * @className QuantizeTask
+	 * @description Quantize a range of a pulse, split in halves down to
+	 *              PARALLEL_SIZE / 4 samples.
+	 */
+	static class QuantizeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Pulse pulse;
+		private final ShortBuffer codes;
+		private final int from;
+		private final int to;
+
+		QuantizeTask(Pulse pulse, ShortBuffer codes, int from, int to) {
+			this.pulse = pulse;
+			this.codes = codes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_SIZE >> 2) {
+				quantize(pulse, codes, from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new QuantizeTask(pulse, codes, from, middle), new QuantizeTask(pulse, codes, middle, to));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+* @project USTCADDA
+* @title PulseSchedule.java
+* @package ustcdac
+* @description Wave of one channel built from timed pulses
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @className PulseSchedule
+ * @description Place pulses at sample offsets of a wave and render it to DAC
+ *              codes for writeWave. Pulses come from a PulseLibrary, so a
+ *              schedule repeating the same shapes mostly copies cached codes.
+ *              Overlapping pulses add, the sum is clamped to 16 bits, and
+ *              samples without pulse are CENTER.
+ * @date 2026.10.17
+ */
+public class PulseSchedule {
+	private final int length;
+	private final List<Pulse> pulses = new ArrayList<Pulse>();
+	private int[] starts = new int[16];
+
+	/**
+	 * Create an empty schedule.
+	 *
+	 * @param length
+	 *            Length of the wave in samples
+	 */
+	public PulseSchedule(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * @title add
+	 * @description Place a pulse at a sample offset
+	 * @param start
+	 *            Offset of the first sample of the pulse
+	 * @param pulse
+	 *            The pulse
+	 * @return This schedule
+	 */
+	public PulseSchedule add(int start, Pulse pulse) {
+		if (start < 0 || start + pulse.getLength() > length) {
+			throw new IllegalArgumentException(pulse + " at " + start + " does not fit " + length + " samples");
+		}
+		if (pulses.size() == starts.length) {
+			int[] grown = new int[starts.length << 1];
+			System.arraycopy(starts, 0, grown, 0, starts.length);
+			starts = grown;
+		}
+		starts[pulses.size()] = start;
+		pulses.add(pulse);
+		return this;
+	}
+
+	/**
+	 * @title add
+	 * @description Place a pulse at a time
+	 * @param time
+	 *            Time of the first sample of the pulse in seconds
+	 * @param pulse
+	 *            The pulse
+	 * @return This schedule
+	 */
+	public PulseSchedule add(double time, Pulse pulse) {
+		return add((int) Math.round(time * Pulse.SAMPLE_RATE), pulse);
+	}
+
+	/**
+	 * @title render
+	 * @description Render the schedule with the shared library
+	 * @return The wave
+	 */
+	public int[] render() {
+		return render(PulseLibrary.shared());
+	}
+
+	/**
+	 * @title render
+	 * @description Render the schedule, computing its missing pulses first
+	 * @param library
+	 *            The pulse library
+	 * @return The wave, one code per sample
+	 */
+	public int[] render(PulseLibrary library) {
+		library.prepare(pulses);
+		int[] wave = new int[length];
+		for (int p = 0; p < pulses.size(); p++) {
+			ShortBuffer codes = library.get(pulses.get(p));
+			int start = starts[p];
+			int count = pulses.get(p).getLength();
+			for (int i = 0; i < count; i++) {
+				wave[start + i] += (codes.get(i) & 0xffff) - PulseLibrary.CENTER;
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			wave[i] = Math.max(0, Math.min(0xffff, wave[i] + PulseLibrary.CENTER));
+		}
+		return wave;
+	}
+
+	/**
+	 * @title getLength
+	 * @description Get length of the wave
+	 * @return Length in samples
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @title getPulseCount
+	 * @description Get count of pulses placed
+	 * @return Pulse count
+	 */
+	public int getPulseCount() {
+		return pulses.size();
+	}
+}
@@ -0,0 +1,235 @@
+/**
+* @project USTCADDA
+* @title RegisterShadow.java
+* @package ustcdac
+* @description Host side cache of DAC board and AD9136 registers
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @className RegisterShadow
+ * @description Last known value of the registers of one board, filled by reads
+ *              and by writeReg. A register has a time to live: STATIC ones are
+ *              served from the cache until invalidated, volatile ones until
+ *              their TTL runs out, and those with TTL 0 are not cached. Only
+ *              the AD9136 temperature registers 0x132 and 0x133 are cached
+ *              by default, for 1 second. Other registers take the default TTL,
+ *              0 unless changed, so polling a status register always reads the
+ *              board; declare registers known to be static with setTTL.
+ * @date 2026.10.17
+ */
+public class RegisterShadow {
+	/**
+	 * @fields BOARD : Kind of registers read by readReg, bank is the bank
+	 */
+	public static final int BOARD = 0;
+	/**
+	 * @fields AD9136 : Kind of registers read by readAD9136, bank is the chip
+	 */
+	public static final int AD9136 = 1;
+	/**
+	 * @fields STATIC : TTL of registers that only change when written
+	 */
+	public static final long STATIC = -1;
+
+	/**
+	 * @className Entry
+	 * @description Cached value of one register.
+	 */
+	static class Entry {
+		int value;
+		long time;
+	}
+
+	private final Map<Long, Entry> values = new HashMap<Long, Entry>();
+	private final Map<Long, Long> ttls = new HashMap<Long, Long>();
+	private long defaultTTL = 0;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create an empty shadow with the AD9136 temperature registers volatile.
+	 */
+	public RegisterShadow() {
+		for (int chip = 1; chip <= 2; chip++) {
+			setTTL(AD9136, chip, 0x132, 1000);
+			setTTL(AD9136, chip, 0x133, 1000);
+		}
+	}
+
+	/**
+	 * @title setTTL
+	 * @description Set time to live of one register
+	 * @param kind
+	 *            BOARD or AD9136
+	 * @param bank
+	 *            Bank for BOARD, chip for AD9136
+	 * @param addr
+	 *            Register address
+	 * @param millis
+	 *            The unit is millisecond, STATIC for no expiry, 0 for no cache
+	 */
+	public synchronized void setTTL(int kind, int bank, int addr, long millis) {
+		ttls.put(key(kind, bank, addr), millis);
+	}
+
+	/**
+	 * @title setDefaultTTL
+	 * @description Set time to live of registers not set by setTTL, only
+	 *              safe when none of them changes without being written
+	 * @param millis
+	 *            The unit is millisecond, STATIC for no expiry, 0 for no cache,
+	 *            the default
+	 */
+	public synchronized void setDefaultTTL(long millis) {
+		this.defaultTTL = millis;
+	}
+
+	/**
+	 * @title invalidate
+	 * @description Forget every value
+	 */
+	public synchronized void invalidate() {
+		values.clear();
+	}
+
+	/**
+	 * @title invalidate
+	 * @description Forget values of one kind
+	 * @param kind
+	 *            BOARD or AD9136
+	 */
+	public synchronized void invalidate(int kind) {
+		Iterator<Long> it = values.keySet().iterator();
+		while (it.hasNext()) {
+			if ((it.next() >>> 48) == kind) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @title invalidate
+	 * @description Forget value of one register
+	 * @param kind
+	 *            BOARD or AD9136
+	 * @param bank
+	 *            Bank for BOARD, chip for AD9136
+	 * @param addr
+	 *            Register address
+	 */
+	public synchronized void invalidate(int kind, int bank, int addr) {
+		values.remove(key(kind, bank, addr));
+	}
+
+	/**
+	 * @title getHits
+	 * @description Get count of reads served from the cache
+	 * @return Hit count
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @title getMisses
+	 * @description Get count of reads sent to the board
+	 * @return Miss count
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @title getHitRate
+	 * @description Get ratio of reads served from the cache
+	 * @return Hit rate, 0 before any read
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @title get
+	 * @description Get a fresh cached value, counting a hit or a miss
+	 * @return The value, or null when absent or expired
+	 */
+	synchronized Integer get(int kind, int bank, int addr) {
+		long key = key(kind, bank, addr);
+		Entry entry = values.get(key);
+		if (entry != null && isFresh(key, entry, System.nanoTime())) {
+			hits++;
+			return entry.value;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * @title put
+	 * @description Record a value read from or written to the board
+	 */
+	synchronized void put(int kind, int bank, int addr, int value) {
+		long key = key(kind, bank, addr);
+		if (ttl(key) == 0) {
+			values.remove(key);
+			return;
+		}
+		Entry entry = values.get(key);
+		if (entry == null) {
+			entry = new Entry();
+			values.put(key, entry);
+		}
+		entry.value = value;
+		entry.time = System.nanoTime();
+	}
+
+	/**
+	 * @title getExpired
+	 * @description Get cached registers whose value has expired
+	 * @return {kind, bank, addr} of each register, ordered by kind and bank
+	 */
+	synchronized List<int[]> getExpired() {
+		long[] keys = new long[values.size()];
+		int n = 0;
+		long now = System.nanoTime();
+		for (Map.Entry<Long, Entry> e : values.entrySet()) {
+			if (ttl(e.getKey()) != 0 && !isFresh(e.getKey(), e.getValue(), now)) {
+				keys[n++] = e.getKey();
+			}
+		}
+		Arrays.sort(keys, 0, n);
+		List<int[]> expired = new ArrayList<int[]>(n);
+		for (int i = 0; i < n; i++) {
+			expired.add(new int[] { (int) (keys[i] >>> 48), (int) ((keys[i] >>> 32) & 0xffff), (int) keys[i] });
+		}
+		return expired;
+	}
+
+	private long ttl(long key) {
+		Long ttl = ttls.get(key);
+		return ttl == null ? defaultTTL : ttl;
+	}
+
+	private boolean isFresh(long key, Entry entry, long now) {
+		long millis = ttl(key);
+		return millis == STATIC || now - entry.time < TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	private static long key(int kind, int bank, int addr) {
+		return ((long) kind << 48) | ((long) (bank & 0xffff) << 32) | (addr & 0xffffffffL);
+	}
+}
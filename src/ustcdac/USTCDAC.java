@@ -11,13 +11,13 @@
 
 package ustcdac;
 
+import java.util.Arrays;
+import java.util.List;
+
 import com.sun.jna.ptr.IntByReference;
-import com.sun.jna.platform.win32.WinDef.UINTByReference;
-import com.sun.jna.platform.win32.WinDef.UINT;
-import com.sun.jna.platform.win32.WinDef.USHORT;
 import com.sun.jna.Memory;
 import com.sun.jna.Pointer;
-import ustcdac.CDACLib;
+import ustcadda.NativeBufferPool;
 
 /**
  * @className USTCDAC
@@ -32,7 +32,7 @@ public class USTCDAC {
 	/**
 	 * @fields id : The id of opened dac
 	 */
-	private UINT id;
+	private int id;
 	/**
 	 * @fields ip : The ip address of DAC
 	 */
@@ -40,7 +40,7 @@ public class USTCDAC {
 	/**
 	 * @fields port : The serve port of DAC
 	 */
-	private USHORT port;
+	private short port;
 	/**
 	 * @fields isOpen : The open state of DAC
 	 */
@@ -50,6 +50,49 @@ public class USTCDAC {
 	 *         mode
 	 */
 	private boolean isBlock;
+	/**
+	 * @fields backend : The driver behind this DAC
+	 */
+	private final DACBackend backend;
+	/**
+	 * @fields uploads : Hashes of the wave and seq regions last written
+	 */
+	private final UploadCache uploads = new UploadCache();
+	/**
+	 * @fields isUploadCache : Whether uploads of unchanged data are skipped
+	 */
+	private boolean isUploadCache = true;
+	/**
+	 * @fields shadow : Copy of the wave and seq memory written
+	 */
+	private final MemoryShadow shadow = new MemoryShadow();
+	/**
+	 * @fields isDiffUpload : Whether only changed ranges are uploaded
+	 */
+	private boolean isDiffUpload = true;
+	/**
+	 * @fields registers : Last known values of board and AD9136 registers
+	 */
+	private final RegisterShadow registers = new RegisterShadow();
+	/**
+	 * @fields isRegisterCache : Whether register reads are served from registers
+	 */
+	private boolean isRegisterCache = true;
+	/**
+	 * @fields functionLock : Held while pushing a function or reading the
+	 *         function stack, so a DACCommandQueue poller sees offsets that
+	 *         match functionCount
+	 */
+	private final Object functionLock = new Object();
+	/**
+	 * @fields functionCount : Count of functions pushed onto the function
+	 *         stack, guarded by functionLock
+	 */
+	private long functionCount;
+	/**
+	 * @fields lastError : The last error code returned by backend, 0 for none
+	 */
+	private volatile int lastError;
 
 	/**
 	 * @fields sampleRate : Sample rate of DAC
@@ -60,30 +103,35 @@ public class USTCDAC {
 	 */
 	public final int channelAmount = 4;
 
-	final int WRITEMEMINST = 0x00000004;
-	final int STARTSTOPINST = 0x00000405;
-	final int SETLOOPINST = 0x00000905;
-	final int SETBROADCAST = 0x00001305;
-	final int SENDCMDINST = 0x00001805;
-	final int INITBOARDINST = 0x00001A05;
-	final int SETDEFVOLTINST = 0x00001B05;
-	final int READAD9136C1 = 0x00001C05;
-	final int READAD9136C2 = 0x00001D05;
-	final int POWERONDACINST = 0x00001E05;
-	final int CLEARTRIGINST = 0x00001F05;
-	final int CONFIGEERPOM = 0x00002005;
-
-	final int SETTOTALCNTCMD = 1;
-	final int SETDACSTARTCMD = 2;
-	final int SETDACSTOPCMD = 3;
-	final int SETTRIGSTARTCMD = 4;
-	final int SETTRIGSTOPCMD = 5;
-	final int SETISMASTERCMD = 6;
-	final int SETTRIGSELCMD = 7;
-	final int SENDINTTRIGCMD = 8;
-	final int SETTRIGINTCMD = 9;
-	final int SETTRIGCOUNTCMD = 10;
-	final int INITBOARDCMD = 11;
+	static final int WRITEMEMINST = 0x00000004;
+	static final int STARTSTOPINST = 0x00000405;
+	static final int SETLOOPINST = 0x00000905;
+	static final int SETBROADCAST = 0x00001305;
+	static final int SENDCMDINST = 0x00001805;
+	static final int INITBOARDINST = 0x00001A05;
+	static final int SETDEFVOLTINST = 0x00001B05;
+	static final int READAD9136C1 = 0x00001C05;
+	static final int READAD9136C2 = 0x00001D05;
+	static final int POWERONDACINST = 0x00001E05;
+	static final int CLEARTRIGINST = 0x00001F05;
+	static final int CONFIGEERPOM = 0x00002005;
+	/**
+	 * @fields BATCH_SIZE : Functions pushed by a batch before their returns are
+	 *         read
+	 */
+	static final int BATCH_SIZE = 1024;
+
+	static final int SETTOTALCNTCMD = 1;
+	static final int SETDACSTARTCMD = 2;
+	static final int SETDACSTOPCMD = 3;
+	static final int SETTRIGSTARTCMD = 4;
+	static final int SETTRIGSTOPCMD = 5;
+	static final int SETISMASTERCMD = 6;
+	static final int SETTRIGSELCMD = 7;
+	static final int SENDINTTRIGCMD = 8;
+	static final int SETTRIGINTCMD = 9;
+	static final int SETTRIGCOUNTCMD = 10;
+	static final int INITBOARDCMD = 11;
 
 	/**
 	 * @className InstructionPara
@@ -117,8 +165,23 @@ public class USTCDAC {
 	 *            DAC serve port
 	 */
 	public USTCDAC(String ip, short port) {
+		this(ip, port, CDACLib.INSTANCE);
+	}
+
+	/**
+	 * Create new instance of USTCDAC on specified backend.
+	 * 
+	 * @param ip
+	 *            DAC ip address
+	 * @param port
+	 *            DAC serve port
+	 * @param backend
+	 *            The driver backend, for example a NioDACBackend
+	 */
+	public USTCDAC(String ip, short port, DACBackend backend) {
 		this.ip = ip;
-		this.port = new USHORT(port);
+		this.port = port;
+		this.backend = backend;
 	}
 
 	/**
@@ -128,8 +191,7 @@ public class USTCDAC {
 	 *            DAC ip address
 	 */
 	public USTCDAC(String ip) {
-		this.ip = ip;
-		this.port = new USHORT(80);
+		this(ip, (short) 80);
 	}
 
 	/**
@@ -141,52 +203,48 @@ public class USTCDAC {
 	 *            First parameter
 	 * @param para2
 	 *            Second parameter
+	 * @return Return of the instruction in block mode, null in unblock mode
 	 */
-	private void writeInstruction(int instruction, int para1, int para2) {
-		int code = CDACLib.INSTANCE.WriteInstruction(id, instruction, para1, para2);
-		checkReturn(code);
-		block();
+	private ReturnPara writeInstruction(int instruction, int para1, int para2) {
+		int code = issueInstruction(instruction, para1, para2);
+		check(code);
+		return isBlock ? getReturn(1) : null;
 	}
 
 	/**
-	 * @title formatWave
-	 * @description Format int data to adapted to network byte order
-	 * @param wave
-	 *            The raw wave data
-	 * @return The formated wave data
+	 * @title issueInstruction
+	 * @description Push an instruction without waiting for its return
+	 * @return Error code, 0 for success
 	 */
-	private short[] formatWave(int[] wave) {
-		int waveLen = wave.length;
-		if (wave.length % 8 != 0) {
-			waveLen = ((wave.length >> 3) + 1) << 3;
+	int issueInstruction(int instruction, int para1, int para2) {
+		if (instruction == INITBOARDINST || instruction == POWERONDACINST) {
+			registers.invalidate(RegisterShadow.AD9136);
 		}
-		short[] newWave = new short[waveLen];
-		for (int i = 1; i < wave.length; i += 2) {
-			newWave[i] = (short) (wave[i - 1] & 0x0000ffff);
-			newWave[i - 1] = (short) (wave[i] & 0x0000ffff);
-		}
-		for (int i = wave.length; i < waveLen; i++) {
-			newWave[i] = (short) (32768 & 0x00ff);
+		synchronized (functionLock) {
+			int code = backend.WriteInstruction(id, instruction, para1, para2);
+			if (code == 0) {
+				functionCount++;
+			}
+			return code;
 		}
-		return newWave;
 	}
 
 	/**
-	 * @title formatSeq
-	 * @description Format long seq to adapted to network byte order
-	 * @param seq
-	 *            The raw seq array
-	 * @return The formated seq array
+	 * @title issueMemory
+	 * @description Push a memory write without waiting for its return, the
+	 *              range is forgotten by the upload cache and the shadow
+	 * @return Error code, 0 for success
 	 */
-	private short[] formatSeq(long[] seq) {
-		short[] newSeq = new short[seq.length * 4];
-		for (int i = 0; i < seq.length; i++) {
-			newSeq[i * 4] = (short) ((seq[i] >> 32) & 0x000000000000ffff);
-			newSeq[i * 4 + 1] = (short) ((seq[i] >> 48) & 0x000000000000ffff);
-			newSeq[i * 4 + 2] = (short) ((seq[i] >> 0) & 0x000000000000ffff);
-			newSeq[i * 4 + 3] = (short) ((seq[i] >> 16) & 0x000000000000ffff);
+	int issueMemory(int startAddr, Pointer pData, int length) {
+		uploads.invalidate(startAddr, length);
+		shadow.update(startAddr, pData, length, false);
+		synchronized (functionLock) {
+			int code = backend.WriteMemory(id, WRITEMEMINST, startAddr, length, pData);
+			if (code == 0) {
+				functionCount++;
+			}
+			return code;
 		}
-		return newSeq;
 	}
 
 	/**
@@ -196,17 +254,83 @@ public class USTCDAC {
 	 *            The instruction defined by DAC
 	 * @param startAddr
 	 *            Start address of memory
-	 * @param data
+	 * @param pData
 	 *            The data to be write in memory
+	 * @param length
+	 *            Length of data in bytes
+	 * @return True if the function returned success, only known in block
+	 *         mode, in unblock mode it may still fail after this returns
 	 */
-	private void writeMemory(int instruction, int startAddr, short data[]) {
-		Pointer pData = new Memory(2 * data.length);
-		for (int k = 0; k < data.length; k++) {
-			pData.setShort(k << 1, data[k]);
+	private boolean writeMemory(int instruction, int startAddr, Pointer pData, int length) {
+		IntByReference pRetState = new IntByReference(-1);
+		synchronized (functionLock) {
+			int code = backend.WriteMemory(id, instruction, startAddr, length, pData);
+			if (code == 0) {
+				functionCount++;
+			}
+			check(code);
+			if (code != 0 || !isBlock) {
+				return false;
+			}
+			// Only the state is needed, so do not read back the data.
+			code = backend.GetReturn(id, 1, pRetState, new IntByReference(), null);
+			check(code);
+			return code == 0 && pRetState.getValue() == 0;
+		}
+	}
+
+	/**
+	 * @title upload
+	 * @description Write encoded data to memory unless the region already
+	 *              holds data of the same hash. With diff upload, only the
+	 *              ranges differing from the shadow are written.
+	 * @param startAddr
+	 *            Start address of memory
+	 * @param length
+	 *            Length of encoded data in bytes
+	 * @param hash
+	 *            Hash of the unformatted data
+	 * @param wave
+	 *            The wave, or null for seq
+	 * @param seq
+	 *            The seq, or null for wave
+	 */
+	private void upload(int startAddr, int length, long hash, int[] wave, long[] seq) {
+		if (isUploadCache && uploads.isCurrent(startAddr, length, hash)) {
+			return;
+		}
+		uploads.invalidate(startAddr, length);
+		// In unblock mode the driver still reads pData after WriteMemory
+		// returns, so the buffer is only pooled when block waits for it.
+		boolean isPooled = isBlock;
+		Memory pData = isPooled ? NativeBufferPool.shared().acquire(length) : new Memory(length);
+		boolean isConfirmed = true;
+		try {
+			if (wave != null) {
+				WaveEncoder.encodeWave(wave, pData);
+			} else {
+				WaveEncoder.encodeSeq(seq, pData);
+			}
+			if (isDiffUpload && shadow.covers(startAddr, length)) {
+				int[] ranges = shadow.diff(startAddr, pData, length);
+				for (int i = 0; i < ranges.length; i += 2) {
+					Pointer pRange = pData.share(ranges[i]);
+					boolean isWritten = writeMemory(WRITEMEMINST, startAddr + ranges[i], pRange, ranges[i + 1]);
+					shadow.update(startAddr + ranges[i], pRange, ranges[i + 1], isWritten);
+					isConfirmed &= isWritten;
+				}
+			} else {
+				isConfirmed = writeMemory(WRITEMEMINST, startAddr, pData, length);
+				shadow.update(startAddr, pData, length, isConfirmed && isDiffUpload);
+			}
+		} finally {
+			if (isPooled) {
+				NativeBufferPool.shared().release(pData);
+			}
+		}
+		if (isConfirmed && isUploadCache) {
+			uploads.update(startAddr, length, hash);
 		}
-		int code = CDACLib.INSTANCE.WriteMemory(id, instruction, startAddr, 2 * data.length, pData);
-		checkReturn(code);
-		block();
 	}
 
 	/**
@@ -215,11 +339,17 @@ public class USTCDAC {
 	 */
 	public void openDAC() {
 		if (!isOpen) {
-			UINTByReference pID = new UINTByReference();
-			int code = CDACLib.INSTANCE.OpenDAC(pID, ip, port);
-			checkReturn(code);
+			IntByReference pID = new IntByReference();
+			int code = backend.OpenDAC(pID, ip, port);
+			check(code);
+			if (code != 0) {
+				return;
+			}
 			id = pID.getValue();
 			isOpen = true;
+			uploads.clear();
+			shadow.clear();
+			registers.invalidate();
 		}
 	}
 
@@ -229,9 +359,9 @@ public class USTCDAC {
 	 */
 	public void closeDAC() {
 		if (isOpen) {
-			int code = CDACLib.INSTANCE.CloseDAC(id);
-			checkReturn(code);
-			id.setValue(0);
+			int code = backend.CloseDAC(id);
+			check(code);
+			id = 0;
 			isOpen = false;
 		}
 	}
@@ -248,8 +378,11 @@ public class USTCDAC {
 		IntByReference pInstruction = new IntByReference();
 		IntByReference pPara1 = new IntByReference();
 		IntByReference pPara2 = new IntByReference();
-		int code = CDACLib.INSTANCE.GetFunctionType(id, posOffset, pFuncType, pInstruction, pPara1, pPara2);
-		checkReturn(code);
+		int code;
+		synchronized (functionLock) {
+			code = backend.GetFunctionType(id, posOffset, pFuncType, pInstruction, pPara1, pPara2);
+		}
+		check(code);
 		InstructionPara funcType = new InstructionPara();
 		funcType.functype = pFuncType.getValue();
 		funcType.instruction = pInstruction.getValue();
@@ -268,19 +401,24 @@ public class USTCDAC {
 	public ReturnPara getReturn(int posOffset) {
 		IntByReference pRetData = new IntByReference(0);
 		IntByReference pRetState = new IntByReference(-1);
-		Pointer pData = null;
+		Memory pData = null;
 		ReturnPara returnPara = new ReturnPara();
-		InstructionPara instructionPara = new InstructionPara();
-		instructionPara = getInstruction(posOffset);
-		if (instructionPara.functype != 1) {
-			pData = new Memory(instructionPara.para2);
-		}
-		int code = CDACLib.INSTANCE.GetReturn(id, posOffset, pRetState, pRetData, pData);
-		checkReturn(code);
-		returnPara.retData = pRetData.getValue();
-		returnPara.retState = pRetState.getValue();
-		if (instructionPara.functype != 1) {
-			returnPara.data = pData.getShortArray(0, instructionPara.para2 >> 1);
+		synchronized (functionLock) {
+			InstructionPara instructionPara = getInstruction(posOffset);
+			if (instructionPara.functype != 1) {
+				pData = NativeBufferPool.shared().acquire(instructionPara.para2);
+			}
+			try {
+				int code = backend.GetReturn(id, posOffset, pRetState, pRetData, pData);
+				check(code);
+				returnPara.retData = pRetData.getValue();
+				returnPara.retState = pRetState.getValue();
+				if (instructionPara.functype != 1) {
+					returnPara.data = pData.getShortArray(0, instructionPara.para2 >> 1);
+				}
+			} finally {
+				NativeBufferPool.shared().release(pData);
+			}
 		}
 		return returnPara;
 	}
@@ -296,8 +434,11 @@ public class USTCDAC {
 	 *            The register data
 	 */
 	public void writeReg(int bank, int addr, int data) {
-		int cmd = bank << 8 + 2;
-		writeInstruction(cmd, addr, data);
+		registers.invalidate(RegisterShadow.BOARD, bank, addr);
+		ReturnPara returnPara = writeInstruction(writeRegInst(bank), addr, data);
+		if (isRegisterCache && returnPara != null && returnPara.retState == 0) {
+			registers.put(RegisterShadow.BOARD, bank, addr, data);
+		}
 	}
 
 	/**
@@ -310,10 +451,157 @@ public class USTCDAC {
 	 * @return Register value
 	 */
 	public int readReg(int bank, int addr) {
-		int cmd = bank << 8 + 1;
-		writeInstruction(cmd, addr, 0);
-		ReturnPara returnPara = getReturn(1);
-		return returnPara.retData;
+		return readRegister(RegisterShadow.BOARD, bank, addr, readRegInst(bank));
+	}
+
+	/**
+	 * @title writeRegs
+	 * @description Write registers of one bank, all writes are pushed before
+	 *              their returns are read, so the batch costs about one round
+	 *              trip in block and unblock mode
+	 * @param bank
+	 *            The register bank
+	 * @param addrs
+	 *            The register addresses
+	 * @param data
+	 *            The register data, one per address
+	 */
+	public void writeRegs(int bank, int[] addrs, int[] data) {
+		if (addrs.length != data.length) {
+			throw new IllegalArgumentException("Got " + addrs.length + " addresses and " + data.length + " data");
+		}
+		for (int addr : addrs) {
+			registers.invalidate(RegisterShadow.BOARD, bank, addr);
+		}
+		int[] states = runBatch(writeRegInst(bank), addrs, data, null);
+		for (int i = 0; i < addrs.length; i++) {
+			if (isRegisterCache && isBlock && states[i] == 0) {
+				registers.put(RegisterShadow.BOARD, bank, addrs[i], data[i]);
+			}
+		}
+	}
+
+	/**
+	 * @title readRegs
+	 * @description Read registers of one bank, fresh values come from the
+	 *              register shadow and the others are read in one batch
+	 * @param bank
+	 *            Bank address of register
+	 * @param addrs
+	 *            Addresses of register
+	 * @return Register values, one per address
+	 */
+	public int[] readRegs(int bank, int[] addrs) {
+		return readRegisters(RegisterShadow.BOARD, bank, addrs, readRegInst(bank));
+	}
+
+	/**
+	 * @title readRegisters
+	 * @description Read registers served from the shadow when fresh, the
+	 *              misses in one batch, keeping the values read successfully
+	 *              in block mode
+	 */
+	private int[] readRegisters(int kind, int bank, int[] addrs, int instruction) {
+		int[] values = new int[addrs.length];
+		int[] misses = new int[addrs.length];
+		int count = 0;
+		for (int i = 0; i < addrs.length; i++) {
+			Integer value = isRegisterCache ? registers.get(kind, bank, addrs[i]) : null;
+			if (value != null) {
+				values[i] = value;
+			} else {
+				misses[count++] = i;
+			}
+		}
+		int[] missAddrs = new int[count];
+		for (int j = 0; j < count; j++) {
+			missAddrs[j] = addrs[misses[j]];
+		}
+		int[] retData = new int[count];
+		int[] states = runBatch(instruction, missAddrs, null, retData);
+		for (int j = 0; j < count; j++) {
+			values[misses[j]] = retData[j];
+			if (isRegisterCache && isBlock && states[j] == 0) {
+				registers.put(kind, bank, missAddrs[j], retData[j]);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @title runBatch
+	 * @description Push one instruction per parameter in chunks of BATCH_SIZE
+	 *              and read the returns of each chunk in one sweep over the
+	 *              function stack, oldest first
+	 * @return Return state of each function, -1 for one not pushed or read
+	 */
+	private int[] runBatch(int instruction, int[] para1, int[] para2, int[] retData) {
+		int[] states = new int[para1.length];
+		Arrays.fill(states, -1);
+		IntByReference pRetData = new IntByReference();
+		IntByReference pRetState = new IntByReference();
+		for (int base = 0; base < para1.length; base += BATCH_SIZE) {
+			int end = Math.min(para1.length, base + BATCH_SIZE);
+			int sent = 0;
+			for (int i = base; i < end; i++) {
+				int code = issueInstruction(instruction, para1[i], para2 == null ? 0 : para2[i]);
+				if (code != 0) {
+					check(code);
+					break;
+				}
+				sent++;
+			}
+			synchronized (functionLock) {
+				for (int j = 0; j < sent; j++) {
+					pRetState.setValue(-1);
+					int code = backend.GetReturn(id, sent - j, pRetState, pRetData, null);
+					if (code != 0) {
+						check(code);
+						break;
+					}
+					states[base + j] = pRetState.getValue();
+					if (retData != null) {
+						retData[base + j] = pRetData.getValue();
+					}
+				}
+			}
+			if (sent < end - base) {
+				break;
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * @title writeRegInst
+	 * @description Get instruction writing a register bank
+	 */
+	static int writeRegInst(int bank) {
+		return bank << 8 + 2;
+	}
+
+	/**
+	 * @title readRegInst
+	 * @description Get instruction reading a register bank
+	 */
+	static int readRegInst(int bank) {
+		return bank << 8 + 1;
+	}
+
+	/**
+	 * @title waveAddr
+	 * @description Get start address of a wave
+	 */
+	static int waveAddr(int channel, int memOffset) {
+		return (((channel << 1) - 2) << 18) + (memOffset << 1);
+	}
+
+	/**
+	 * @title seqAddr
+	 * @description Get start address of a seq
+	 */
+	static int seqAddr(int channel, int memOffset) {
+		return (((channel << 1) - 1) << 18) + (memOffset << 3);
 	}
 
 	/**
@@ -328,8 +616,8 @@ public class USTCDAC {
 	 */
 	public void writeWave(int channel, int memOffset, int[] data) {
 		assert (channel <= channelAmount && channel >= 1);
-		int startAddr = (((channel << 1) - 2) << 18) + (memOffset << 1);
-		writeMemory(WRITEMEMINST, startAddr, formatWave(data));
+		int startAddr = waveAddr(channel, memOffset);
+		upload(startAddr, WaveEncoder.waveLength(data.length), UploadCache.hash(data), data, null);
 	}
 
 	/**
@@ -344,8 +632,8 @@ public class USTCDAC {
 	 */
 	public void writeSeq(int channel, int memOffset, long seq[]) {
 		assert (channel <= channelAmount && channel >= 1);
-		int startAddr = (((channel << 1) - 1) << 18) + (memOffset << 3);
-		writeMemory(WRITEMEMINST, startAddr, formatSeq(seq));
+		int startAddr = seqAddr(channel, memOffset);
+		upload(startAddr, seq.length << 3, UploadCache.hash(seq), null, seq);
 	}
 
 	/**
@@ -359,11 +647,11 @@ public class USTCDAC {
 	public void setTimeOut(boolean isOut, float time) {
 		int code;
 		if (isOut) {
-			code = CDACLib.INSTANCE.SetTimeOut(id, 1, time);
+			code = backend.SetTimeOut(id, 1, time);
 		} else {
-			code = CDACLib.INSTANCE.SetTimeOut(id, 0, time);
+			code = backend.SetTimeOut(id, 0, time);
 		}
-		checkReturn(code);
+		check(code);
 	}
 
 	/**
@@ -386,20 +674,83 @@ public class USTCDAC {
 	 * @return The register data( low 8bits)
 	 */
 	public int readAD9136(int chip, int addr) {
-		if (chip == 1) {
-			writeInstruction(READAD9136C1, addr, 0);
-		} else {
-			writeInstruction(READAD9136C2, addr, 0);
+		return readRegister(RegisterShadow.AD9136, chip, addr, chip == 1 ? READAD9136C1 : READAD9136C2);
+	}
+
+	/**
+	 * @title readAD9136
+	 * @description Read DAC(ad9136) chip's registers, fresh values come from
+	 *              the register shadow and the others are read in one batch
+	 * @param chip
+	 *            The selected chip, this can be 1~2
+	 * @param addrs
+	 *            The register addresses
+	 * @return The register data( low 8bits), one per address
+	 */
+	public int[] readAD9136(int chip, int[] addrs) {
+		return readRegisters(RegisterShadow.AD9136, chip, addrs, chip == 1 ? READAD9136C1 : READAD9136C2);
+	}
+
+	/**
+	 * @title readRegister
+	 * @description Read a register from the shadow, or from the board on a
+	 *              miss and keep the value if the read succeeded
+	 */
+	private int readRegister(int kind, int bank, int addr, int instruction) {
+		if (isRegisterCache) {
+			Integer value = registers.get(kind, bank, addr);
+			if (value != null) {
+				return value;
+			}
+		}
+		ReturnPara returnPara = writeInstruction(instruction, addr, 0);
+		if (returnPara == null) {
+			return getReturn(1).retData;
+		}
+		if (isRegisterCache && returnPara.retState == 0) {
+			registers.put(kind, bank, addr, returnPara.retData);
 		}
-		ReturnPara returnPara = getReturn(1);
 		return returnPara.retData;
 	}
 
+	/**
+	 * @title refreshRegisters
+	 * @description Read again every cached register whose TTL ran out, so the
+	 *              next reads of them are served from the shadow
+	 * @return Count of registers read
+	 */
+	public int refreshRegisters() {
+		List<int[]> expired = registers.getExpired();
+		int from = 0;
+		while (from < expired.size()) {
+			int kind = expired.get(from)[0];
+			int bank = expired.get(from)[1];
+			int to = from;
+			while (to < expired.size() && expired.get(to)[0] == kind && expired.get(to)[1] == bank) {
+				to++;
+			}
+			int[] addrs = new int[to - from];
+			for (int i = 0; i < addrs.length; i++) {
+				addrs[i] = expired.get(from + i)[2];
+			}
+			if (kind == RegisterShadow.BOARD) {
+				readRegs(bank, addrs);
+			} else {
+				readAD9136(bank, addrs);
+			}
+			from = to;
+		}
+		return expired.size();
+	}
+
 	/**
 	 * @title initBoard
 	 * @description Init the DAC chip
 	 */
 	public void initBoard() {
+		uploads.clear();
+		shadow.clear();
+		registers.invalidate();
 		writeInstruction(INITBOARDINST, INITBOARDCMD, 1 << 16);
 	}
 
@@ -597,8 +948,9 @@ public class USTCDAC {
 	 */
 	public double getChipTemperature(int chip) {
 		assert (chip == 1 || chip == 2);
-		int tt1 = readAD9136(chip, 0x132) & 0x000000FF;
-		int tt2 = readAD9136(chip, 0x133) & 0x000000FF;
+		int[] tt = readAD9136(chip, new int[] { 0x132, 0x133 });
+		int tt1 = tt[0] & 0x000000FF;
+		int tt2 = tt[1] & 0x000000FF;
 		double temp = 30 + 7.3 * ((tt2 << 8) + tt1 - 39200) / 1000.0;
 		return temp;
 	}
@@ -613,6 +965,165 @@ public class USTCDAC {
 		this.isBlock = isBlock;
 	}
 
+	/**
+	 * @title setUploadCache
+	 * @description Set whether writeWave and writeSeq skip data the region
+	 *              already holds. Only writes whose return confirmed success,
+	 *              that is writes in block mode, are remembered, so uploads in
+	 *              unblock mode are always sent. Call invalidateUploads if the
+	 *              memory was changed by other means, for example by another
+	 *              host.
+	 * @param isUploadCache
+	 *            True to skip unchanged uploads, the default
+	 */
+	public void setUploadCache(boolean isUploadCache) {
+		this.isUploadCache = isUploadCache;
+		uploads.clear();
+	}
+
+	/**
+	 * @title invalidateUploads
+	 * @description Forget what was written, the next uploads are all sent
+	 */
+	public void invalidateUploads() {
+		uploads.clear();
+		shadow.clear();
+	}
+
+	/**
+	 * @title setDiffUpload
+	 * @description Set whether writeWave and writeSeq compare with a copy of
+	 *              the memory written and send only the 8 samples aligned
+	 *              blocks that changed, or the whole data when the changed
+	 *              blocks are too scattered. Blocks enter the copy only when
+	 *              block mode confirmed their write, blocks written in unblock
+	 *              mode are sent again.
+	 * @param isDiffUpload
+	 *            True to send changed ranges only, the default
+	 */
+	public void setDiffUpload(boolean isDiffUpload) {
+		this.isDiffUpload = isDiffUpload;
+		shadow.clear();
+	}
+
+	/**
+	 * @title getDiffStats
+	 * @description Get statistics of diff upload
+	 * @return {bytes sent, bytes found unchanged}
+	 */
+	public long[] getDiffStats() {
+		return new long[] { shadow.getBytesSent(), shadow.getBytesSkipped() };
+	}
+
+	/**
+	 * @title getUploadStats
+	 * @description Get statistics of skipped uploads
+	 * @return {hits, misses, bytes skipped}
+	 */
+	public long[] getUploadStats() {
+		return new long[] { uploads.getHits(), uploads.getMisses(), uploads.getBytesSkipped() };
+	}
+
+	/**
+	 * @title getUploadHitRate
+	 * @description Get ratio of skipped uploads to all uploads
+	 * @return Hit rate, 0 before any upload
+	 */
+	public double getUploadHitRate() {
+		long total = uploads.getHits() + uploads.getMisses();
+		return total == 0 ? 0 : (double) uploads.getHits() / total;
+	}
+
+	/**
+	 * @title setRegisterCache
+	 * @description Set whether readReg, readRegs and readAD9136 are served
+	 *              from the register shadow while its values are fresh. Values
+	 *              are only kept in block mode, where the return belongs to
+	 *              the read, by single and batched calls alike.
+	 * @param isRegisterCache
+	 *            True to serve reads from the shadow, the default
+	 */
+	public void setRegisterCache(boolean isRegisterCache) {
+		this.isRegisterCache = isRegisterCache;
+		registers.invalidate();
+	}
+
+	/**
+	 * @title getRegisterShadow
+	 * @description Get the register shadow, to set TTL of registers and read
+	 *              its hit and miss counts
+	 * @return The register shadow
+	 */
+	public RegisterShadow getRegisterShadow() {
+		return registers;
+	}
+
+	/**
+	 * @title getId
+	 * @description Get id of the opened DAC in the backend
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * @title getFunctionCount
+	 * @description Get count of functions pushed onto the function stack, the
+	 *              function numbered k is at offset functionCount - k + 1
+	 */
+	long getFunctionCount() {
+		synchronized (functionLock) {
+			return functionCount;
+		}
+	}
+
+	/**
+	 * @title getFunctionLock
+	 * @description Get the lock held while pushing a function or reading the
+	 *              function stack
+	 */
+	Object getFunctionLock() {
+		return functionLock;
+	}
+
+	/**
+	 * @title getBackend
+	 * @description Get the driver backend of DAC
+	 * @return backend
+	 */
+	public DACBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @title getLastError
+	 * @description Get the last error code returned by backend since
+	 *              clearLastError, errors are also printed by checkReturn
+	 * @return Error code, 0 for none
+	 */
+	public int getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * @title clearLastError
+	 * @description Clear the last error code
+	 */
+	public void clearLastError() {
+		lastError = 0;
+	}
+
+	/**
+	 * @title check
+	 * @description Record and check return state
+	 */
+	private void check(int code) {
+		if (code != 0) {
+			lastError = code;
+			checkReturn(backend, code);
+		}
+	}
+
 	/**
 	 * @title checkReturn
 	 * @description Check return state
@@ -621,9 +1132,21 @@ public class USTCDAC {
 	 */
 	public static void checkReturn(int code) {
 		if (code != 0) {
-			Pointer errordata = new Memory(1024);
-			CDACLib.INSTANCE.GetErrorMsg(code, errordata);
-			String errormsg = errordata.getString(0, "GBK");
+			USTCDAC.checkReturn(CDACLib.INSTANCE, code);
+		}
+	}
+
+	/**
+	 * @title checkReturn
+	 * @description Check return state on specified backend
+	 * @param backend
+	 *            The driver backend
+	 * @param code
+	 *            The error code returned by other function
+	 */
+	public static void checkReturn(DACBackend backend, int code) {
+		if (code != 0) {
+			String errormsg = getErrorMsg(backend, code);
 			try {
 				throw new Exception(errormsg);
 			} catch (Exception e) {
@@ -632,16 +1155,46 @@ public class USTCDAC {
 		}
 	}
 
+	/**
+	 * @title getErrorMsg
+	 * @description Get message of an error code from a backend
+	 */
+	static String getErrorMsg(DACBackend backend, int code) {
+		Memory errordata = NativeBufferPool.shared().acquire(1024);
+		try {
+			errordata.setByte(0, (byte) 0);
+			backend.GetErrorMsg(code, errordata);
+			return errordata.getString(0, "GBK");
+		} finally {
+			NativeBufferPool.shared().release(errordata);
+		}
+	}
+
 	/**
 	 * @title getDriverInfo
 	 * @description Get dynamic link library information
 	 * @return The dll information
 	 */
 	public static String getDriverInfo() {
-		Pointer pData = new Memory(1024);
-		int code = CDACLib.INSTANCE.GetSoftInformation(pData);
-		checkReturn(code);
-		String info = pData.getString(0L);
-		return info;
+		return USTCDAC.getDriverInfo(CDACLib.INSTANCE);
+	}
+
+	/**
+	 * @title getDriverInfo
+	 * @description Get version information of specified backend
+	 * @param backend
+	 *            The driver backend
+	 * @return The backend information
+	 */
+	public static String getDriverInfo(DACBackend backend) {
+		Memory pData = NativeBufferPool.shared().acquire(1024);
+		try {
+			int code = backend.GetSoftInformation(pData);
+			checkReturn(backend, code);
+			String info = pData.getString(0L);
+			return info;
+		} finally {
+			NativeBufferPool.shared().release(pData);
+		}
 	}
 }
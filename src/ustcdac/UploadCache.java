@@ -0,0 +1,157 @@
+/**
+* @project USTCADDA
+* @title UploadCache.java
+* @package ustcdac
+* @description Content hashes of memory regions written to a DAC board
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @className UploadCache
+ * @description Remember the hash of the data last written at each memory
+ *              region of one board, so an upload of the same data to the same
+ *              region can be skipped. Regions are kept disjoint, a write
+ *              forgets every region it overlaps. The hash is taken on the
+ *              unformatted wave or seq, so a hit costs no formatting.
+ * @date 2026.10.17
+ */
+class UploadCache {
+	private final TreeMap<Integer, long[]> regions = new TreeMap<Integer, long[]>();
+	private long hits;
+	private long misses;
+	private long bytesSkipped;
+
+	/**
+	 * @title isCurrent
+	 * @description Check whether a region holds the data, counting a hit or a
+	 *              miss
+	 * @param startAddr
+	 *            Start address of the region
+	 * @param length
+	 *            Length of the region in bytes
+	 * @param hash
+	 *            Hash of the data
+	 * @return True if the same data was last written at the same region
+	 */
+	boolean isCurrent(int startAddr, int length, long hash) {
+		long[] region = regions.get(startAddr);
+		if (region != null && region[0] == length && region[1] == hash) {
+			hits++;
+			bytesSkipped += length;
+			return true;
+		}
+		misses++;
+		return false;
+	}
+
+	/**
+	 * @title update
+	 * @description Record the data written at a region
+	 * @param startAddr
+	 *            Start address of the region
+	 * @param length
+	 *            Length of the region in bytes
+	 * @param hash
+	 *            Hash of the data
+	 */
+	void update(int startAddr, int length, long hash) {
+		invalidate(startAddr, length);
+		regions.put(startAddr, new long[] { length, hash });
+	}
+
+	/**
+	 * @title invalidate
+	 * @description Forget every region overlapping the range
+	 * @param startAddr
+	 *            Start address of the range
+	 * @param length
+	 *            Length of the range in bytes
+	 */
+	void invalidate(int startAddr, int length) {
+		Map.Entry<Integer, long[]> lower = regions.lowerEntry(startAddr);
+		if (lower != null && (long) lower.getKey() + lower.getValue()[0] > startAddr) {
+			regions.remove(lower.getKey());
+		}
+		Iterator<Integer> it = regions.subMap(startAddr, true, (int) Math.min(Integer.MAX_VALUE,
+				(long) startAddr + length - 1), true).keySet().iterator();
+		while (it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @title clear
+	 * @description Forget all regions
+	 */
+	void clear() {
+		regions.clear();
+	}
+
+	/**
+	 * @title getHits
+	 * @description Get count of skipped uploads
+	 */
+	long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @title getMisses
+	 * @description Get count of uploads sent
+	 */
+	long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @title getBytesSkipped
+	 * @description Get bytes not sent thanks to hits
+	 */
+	long getBytesSkipped() {
+		return bytesSkipped;
+	}
+
+	/**
+	 * @title hash
+	 * @description Get 64 bits hash of a wave
+	 */
+	static long hash(int[] data) {
+		long h = data.length;
+		for (int i = 0; i < data.length; i++) {
+			h = mix(h, data[i]);
+		}
+		return finish(h);
+	}
+
+	/**
+	 * @title hash
+	 * @description Get 64 bits hash of a seq
+	 */
+	static long hash(long[] data) {
+		long h = data.length;
+		for (int i = 0; i < data.length; i++) {
+			h = mix(h, data[i]);
+		}
+		return finish(h);
+	}
+
+	private static long mix(long h, long v) {
+		return Long.rotateLeft(h ^ (v * 0x87C37B91114253D5L), 31) * 0x4CF5AD432745937FL;
+	}
+
+	private static long finish(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
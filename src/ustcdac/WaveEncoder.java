@@ -0,0 +1,183 @@
+/**
+* @project USTCADDA
+* @title WaveEncoder.java
+* @package ustcdac
+* @description Encode wave and seq into the memory layout of DAC
+* @author agent
+* @email agent@local
+* @date 2026.10.17
+* @version V1.0
+*/
+package ustcdac;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.sun.jna.Pointer;
+
+/**
+ * @className WaveEncoder
+ * @description Write waves and seqs straight into native memory in the layout
+ *              DAC expects. Each pair of wave samples is swapped and written as
+ *              one int, a wave of odd length loses its last sample, and the
+ *              wave is padded with 0 to a multiple of 8 samples, the same as
+ *              the short array encoding did. Each seq is written as one long,
+ *              its high 32 bits first. Words are built in a per thread scratch
+ *              array and bulk copied, large arrays are split over the fork join
+ *              pool.
+ * @date 2026.10.17
+ */
+class WaveEncoder {
+	/**
+	 * @fields PARALLEL_SIZE : Samples of a wave or entries of a seq above which
+	 *         encoding is split over the pool
+	 */
+	static final int PARALLEL_SIZE = 1 << 17;
+	/**
+	 * @fields CHUNK_SIZE : Words encoded per bulk copy
+	 */
+	static final int CHUNK_SIZE = 2048;
+
+	private static final boolean IS_LITTLE = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	private static final ThreadLocal<int[]> INT_SCRATCH = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[CHUNK_SIZE];
+		}
+	};
+	private static final ThreadLocal<long[]> LONG_SCRATCH = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[CHUNK_SIZE];
+		}
+	};
+
+	/**
+	 * @title waveLength
+	 * @description Get size of an encoded wave
+	 * @param samples
+	 *            Sample count of the wave
+	 * @return Size in bytes, padded to 8 samples
+	 */
+	static int waveLength(int samples) {
+		return (samples + 7) >> 3 << 4;
+	}
+
+	/**
+	 * @title encodeWave
+	 * @description Encode a wave
+	 * @param wave
+	 *            The wave, low 16 bits of each sample are used
+	 * @param pData
+	 *            Receive the encoded wave, at least waveLength bytes
+	 */
+	static void encodeWave(int[] wave, Pointer pData) {
+		int pairs = waveLength(wave.length) >> 2;
+		if (wave.length <= PARALLEL_SIZE || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			encodeWave(wave, pData, 0, pairs);
+		} else {
+			ForkJoinPool.commonPool().invoke(new EncodeTask(wave, null, pData, 0, pairs));
+		}
+	}
+
+	/**
+	 * @title encodeSeq
+	 * @description Encode a seq
+	 * @param seq
+	 *            The seq
+	 * @param pData
+	 *            Receive the encoded seq, at least 8 * seq.length bytes
+	 */
+	static void encodeSeq(long[] seq, Pointer pData) {
+		if (seq.length <= PARALLEL_SIZE || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			encodeSeq(seq, pData, 0, seq.length);
+		} else {
+			ForkJoinPool.commonPool().invoke(new EncodeTask(null, seq, pData, 0, seq.length));
+		}
+	}
+
+	/**
+	 * @title encodeWave
+	 * @description Encode sample pairs [from, to) of a wave
+	 */
+	static void encodeWave(int[] wave, Pointer pData, int from, int to) {
+		IntBuffer out = pData.getByteBuffer(4L * from, 4L * (to - from)).order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+		int[] scratch = INT_SCRATCH.get();
+		int full = wave.length >> 1;
+		for (int base = from; base < to; base += CHUNK_SIZE) {
+			int end = Math.min(to, base + CHUNK_SIZE);
+			int last = Math.min(end, full);
+			int n = 0;
+			for (int k = base; k < last; k++) {
+				int first = wave[2 * k] & 0xffff;
+				int second = wave[2 * k + 1] & 0xffff;
+				scratch[n++] = IS_LITTLE ? second | (first << 16) : (second << 16) | first;
+			}
+			for (int k = Math.max(base, last); k < end; k++) {
+				scratch[n++] = 0;
+			}
+			out.put(scratch, 0, n);
+		}
+	}
+
+	/**
+	 * @title encodeSeq
+	 * @description Encode entries [from, to) of a seq
+	 */
+	static void encodeSeq(long[] seq, Pointer pData, int from, int to) {
+		LongBuffer out = pData.getByteBuffer(8L * from, 8L * (to - from)).order(ByteOrder.nativeOrder())
+				.asLongBuffer();
+		long[] scratch = LONG_SCRATCH.get();
+		for (int base = from; base < to; base += CHUNK_SIZE) {
+			int end = Math.min(to, base + CHUNK_SIZE);
+			int n = 0;
+			for (int k = base; k < end; k++) {
+				long s = seq[k];
+				scratch[n++] = IS_LITTLE ? Long.rotateLeft(s, 32)
+						: ((s >>> 32) & 0xffff) << 48 | ((s >>> 48) & 0xffff) << 32 | (s & 0xffff) << 16
+								| ((s >>> 16) & 0xffff);
+			}
+			out.put(scratch, 0, n);
+		}
+	}
+
+	/**
+	 * @className EncodeTask
+	 * @description Encode a range of wave pairs or seq entries, split in halves
+	 *              down to PARALLEL_SIZE / 4 words.
+	 */
+	static class EncodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] wave;
+		private final long[] seq;
+		private final Pointer pData;
+		private final int from;
+		private final int to;
+
+		EncodeTask(int[] wave, long[] seq, Pointer pData, int from, int to) {
+			this.wave = wave;
+			this.seq = seq;
+			this.pData = pData;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_SIZE >> 2) {
+				if (wave != null) {
+					encodeWave(wave, pData, from, to);
+				} else {
+					encodeSeq(seq, pData, from, to);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new EncodeTask(wave, seq, pData, from, middle), new EncodeTask(wave, seq, pData, middle, to));
+		}
+	}
+}